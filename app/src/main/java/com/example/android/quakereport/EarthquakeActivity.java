@@ -18,38 +18,221 @@ package com.example.android.quakereport;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.v4.app.FragmentManager;
 import android.support.v7.app.AppCompatActivity;
-import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.LinearLayout;
-import android.widget.ListView;
-import android.widget.TextView;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 
-import java.util.ArrayList;
+import java.util.List;
 
-public class EarthquakeActivity extends AppCompatActivity {
+public class EarthquakeActivity extends AppCompatActivity implements EarthquakeLoadFragment.Callbacks {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeActivity.class.getSimpleName();
+
+    private static final String STATE_SORT_ORDER = "sortOrder";
+    private static final String STATE_MIN_MAGNITUDE = "minMagnitude";
+    private static final String STATE_TIME_WINDOW = "timeWindow";
+
+    private EarthquakeLoadFragment loadFragment;
+    private EarthquakeAdapter adapter;
+    private RecyclerView earthquakeListView;
+
+    /** Current filter, see {@link EarthquakeQueryEngine} */
+    private int sortOrder = EarthquakeQueryEngine.SORT_BY_TIME;
+    private double minMagnitude = EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE;
+
+    /** Only show events from the last timeWindow milliseconds, 0 for all of them */
+    private long timeWindow;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
+        if (savedInstanceState != null) {
+            sortOrder = savedInstanceState.getInt(STATE_SORT_ORDER, sortOrder);
+            minMagnitude = savedInstanceState.getDouble(STATE_MIN_MAGNITUDE, minMagnitude);
+            timeWindow = savedInstanceState.getLong(STATE_TIME_WINDOW, timeWindow);
+        }
 
-        // Create a fake list of earthquakes.
-        ArrayList<Earthquake> earthquakes = QueryUtils.extractEarthquakes();
-
-        final EarthquakeAdapter adapter = new EarthquakeAdapter(this, earthquakes);
-        ListView earthquakeListView = (ListView) findViewById(R.id.list);
-        earthquakeListView.setAdapter(adapter);
+        // The earthquakes are parsed in the background by a retained fragment, so a rotation
+        // picks up where the load is instead of parsing again.
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        loadFragment = (EarthquakeLoadFragment) fragmentManager.findFragmentByTag(EarthquakeLoadFragment.TAG);
+        if (loadFragment == null) {
+            loadFragment = new EarthquakeLoadFragment();
+            fragmentManager.beginTransaction().add(loadFragment, EarthquakeLoadFragment.TAG).commit();
+        }
 
-        earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            // The code in this method will be executed when the numbers category is clicked on.
+        // Start with whatever has already been delivered, later batches arrive in onEarthquakesLoaded()
+        adapter = new EarthquakeAdapter(this, filteredEarthquakes(), new EarthquakeAdapter.OnItemClickListener() {
+            // The code in this method will be executed when an earthquake is clicked on.
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                Earthquake currentEarthquake = adapter.getItem(position); //the 'adapter' refers to "final EarthquakeAdapter adapter = new EarthquakeAdapter(this, earthquakes);" above
+            public void onItemClick(Earthquake currentEarthquake) {
                 Intent implicit = new Intent(Intent.ACTION_VIEW, Uri.parse(currentEarthquake.getUrl()));
                 startActivity(implicit);
             }
         });
+        earthquakeListView = (RecyclerView) findViewById(R.id.list);
+        earthquakeListView.setLayoutManager(new LinearLayoutManager(this));
+        earthquakeListView.setHasFixedSize(true);
+        earthquakeListView.setAdapter(adapter);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Keep the list current while it can be seen
+        loadFragment.startPolling();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        loadFragment.stopPolling();
+        // Dump the performance counters whenever the app leaves the screen, to spot regressions
+        Log.i(LOG_TAG, "Performance metrics:\n" + EarthquakeMetrics.get());
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_SORT_ORDER, sortOrder);
+        outState.putDouble(STATE_MIN_MAGNITUDE, minMagnitude);
+        outState.putLong(STATE_TIME_WINDOW, timeWindow);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(sortOrder == EarthquakeQueryEngine.SORT_BY_MAGNITUDE
+                ? R.id.sort_magnitude : R.id.sort_time).setChecked(true);
+        menu.findItem(minMagnitude >= 6 ? R.id.min_magnitude_6
+                : minMagnitude >= 4 ? R.id.min_magnitude_4 : R.id.min_magnitude_all).setChecked(true);
+        menu.findItem(timeWindow == DateUtils.DAY_IN_MILLIS ? R.id.time_window_day
+                : timeWindow == DateUtils.WEEK_IN_MILLIS ? R.id.time_window_week
+                : R.id.time_window_all).setChecked(true);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.sort_time:
+                sortOrder = EarthquakeQueryEngine.SORT_BY_TIME;
+                break;
+            case R.id.sort_magnitude:
+                sortOrder = EarthquakeQueryEngine.SORT_BY_MAGNITUDE;
+                break;
+            case R.id.min_magnitude_all:
+                minMagnitude = EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE;
+                break;
+            case R.id.min_magnitude_4:
+                minMagnitude = 4;
+                break;
+            case R.id.min_magnitude_6:
+                minMagnitude = 6;
+                break;
+            case R.id.time_window_all:
+                timeWindow = 0;
+                break;
+            case R.id.time_window_day:
+                timeWindow = DateUtils.DAY_IN_MILLIS;
+                break;
+            case R.id.time_window_week:
+                timeWindow = DateUtils.WEEK_IN_MILLIS;
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        // Most rows change with a new filter, re-binding the visible ones is cheaper than a diff
+        adapter.swapEarthquakes(filteredEarthquakes());
+        earthquakeListView.scrollToPosition(0);
+        return true;
+    }
+
+    @Override
+    public void onEarthquakesLoaded(List<Earthquake> batch) {
+        // A filtered list waits for the end of the stream: merging each batch into the sorted
+        // result would mean a new index and a diff per batch. The indexed list follows in
+        // onEarthquakesIndexed().
+        if (!isFiltered()) {
+            // Only the newly inserted rows are bound
+            adapter.addAll(batch);
+        }
+    }
+
+    @Override
+    public void onEarthquakesReplaced(List<Earthquake> earthquakes) {
+        if (isFiltered()) {
+            // The filtered rows come from the indexes, until they are built for the new list the
+            // previous result stays up, see onEarthquakesIndexed()
+            if (loadFragment.isIndexed()) {
+                adapter.swapEarthquakes(filteredEarthquakes());
+            }
+        } else {
+            // The new list is paged, diffing it would load every page. Rows that aren't loaded
+            // yet are bound as placeholders and re-bound in onEarthquakesPageLoaded().
+            adapter.swapEarthquakes(earthquakes);
+        }
+    }
+
+    @Override
+    public void onEarthquakesUpdated(List<Earthquake> earthquakes, DiffUtil.DiffResult diff) {
+        if (isFiltered()) {
+            // The diff is against the unfiltered list
+            if (loadFragment.isIndexed()) {
+                adapter.swapEarthquakes(filteredEarthquakes());
+            }
+        } else {
+            // Only the inserted, removed and revised rows are re-bound, in one batch
+            adapter.setEarthquakes(earthquakes, diff);
+        }
+    }
+
+    @Override
+    public void onEarthquakesPageLoaded(int start, int count) {
+        if (isFiltered()) {
+            // The loaded rows are spread over the filtered list, re-bind what is visible
+            adapter.notifyDataSetChanged();
+        } else {
+            adapter.notifyItemRangeChanged(start, count);
+        }
+    }
+
+    @Override
+    public void onEarthquakesIndexed() {
+        if (isFiltered()) {
+            adapter.swapEarthquakes(filteredEarthquakes());
+        }
+    }
+
+    private boolean isFiltered() {
+        return sortOrder != EarthquakeQueryEngine.SORT_BY_TIME
+                || minMagnitude != EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE
+                || timeWindow != 0;
+    }
+
+    /**
+     * Return the delivered earthquakes that pass the current filter, in the current order. The
+     * unfiltered list is already newest first, so it is shown as is. A filtered list is empty
+     * until the indexes are built.
+     */
+    private List<Earthquake> filteredEarthquakes() {
+        if (!isFiltered()) {
+            return loadFragment.getEarthquakes();
+        }
+        long fromTime = timeWindow == 0 ? Long.MIN_VALUE : System.currentTimeMillis() - timeWindow;
+        return loadFragment.query(minMagnitude, fromTime, Long.MAX_VALUE, sortOrder);
     }
 }
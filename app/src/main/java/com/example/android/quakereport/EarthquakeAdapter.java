@@ -1,122 +1,267 @@
 package com.example.android.quakereport;
 
-import android.app.Activity;
+import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.List;
 
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
-    public EarthquakeAdapter(Activity context, ArrayList<Earthquake> words) {
-        super(context, 0, words);
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
+
+    /**
+     * Magnitude circle colors for magnitude 0 up to 10+, indexed by the floor of the magnitude.
+     */
+    private static final int[] MAGNITUDE_COLOR_RESOURCE_IDS = {
+            R.color.magnitude1, // 0 <= magnitude < 1, shares the color of magnitude 1
+            R.color.magnitude1,
+            R.color.magnitude2,
+            R.color.magnitude3,
+            R.color.magnitude4,
+            R.color.magnitude5,
+            R.color.magnitude6,
+            R.color.magnitude7,
+            R.color.magnitude8,
+            R.color.magnitude9,
+            R.color.magnitude10plus
+    };
+
+    /**
+     * Called when a row is clicked.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(Earthquake earthquake);
     }
 
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        //Here we are overriding a method from the ArrayAdapter class!
-        // Check if the existing view is being reused, otherwise inflate the view
-        View listItemView = convertView;
-        if(listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
+    private final LayoutInflater inflater;
+    private final OnItemClickListener listener;
+
+    /** Resolved colors, looked up once per context instead of on every bind */
+    private final int[] magnitudeColors = new int[MAGNITUDE_COLOR_RESOURCE_IDS.length];
+    private final int placeholderColor;
+
+    private List<Earthquake> earthquakes;
+
+    public EarthquakeAdapter(Context context, List<Earthquake> earthquakes, OnItemClickListener listener) {
+        this.inflater = LayoutInflater.from(context);
+        this.earthquakes = earthquakes;
+        this.listener = listener;
+        this.placeholderColor = ContextCompat.getColor(context, R.color.placeholder);
+        for (int i = 0; i < MAGNITUDE_COLOR_RESOURCE_IDS.length; i++) {
+            magnitudeColors[i] = ContextCompat.getColor(context, MAGNITUDE_COLOR_RESOURCE_IDS[i]);
         }
+    }
+
+    /**
+     * Holds the views of a row so they are only looked up once, when the row is inflated.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView magTextView;
+        final GradientDrawable magnitudeCircle;
+        final TextView disTextView;
+        final TextView locTextView;
+        final TextView dateTextView;
+        final TextView timeTextView;
 
-        // Get the {@link AndroidFlavor} object located at this position in the list
-        Earthquake currentEarthquake = getItem(position);
+        ViewHolder(View itemView) {
+            super(itemView);
+            magTextView = (TextView) itemView.findViewById(R.id.mag_textView);
+            // Fetch the background from the TextView, which is a GradientDrawable. mutate() so that
+            // changing its color doesn't change the circle of every other row.
+            magnitudeCircle = (GradientDrawable) magTextView.getBackground().mutate();
+            disTextView = (TextView) itemView.findViewById(R.id.distance_textView);
+            locTextView = (TextView) itemView.findViewById(R.id.location_textView);
+            dateTextView = (TextView) itemView.findViewById(R.id.date_textView);
+            timeTextView = (TextView) itemView.findViewById(R.id.time_textView);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || listener == null) {
+                return;
+            }
+            Earthquake earthquake = earthquakes.get(position);
+            // Nothing to open for a row that is still loading
+            if (earthquake != null) {
+                listener.onItemClick(earthquake);
+            }
+        }
+    }
 
-        // Find the TextView in the list_item.xml layout with the ID version_name
-        TextView magTextView = (TextView) listItemView.findViewById(R.id.mag_textView);
-        // Get the version name from the current AndroidFlavor object and
-        // set this text on the name TextView
-        magTextView.setText(currentEarthquake.getMagnitude());
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ViewHolder(inflater.inflate(R.layout.list_item, parent, false));
+    }
 
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long start = System.nanoTime();
+        Earthquake currentEarthquake = earthquakes.get(position);
+        if (currentEarthquake == null) {
+            bindPlaceholder(holder);
+        } else {
+            bind(holder, currentEarthquake);
+        }
+        EarthquakeMetrics.get().getBind().record(System.nanoTime() - start);
+    }
 
-        //Below draws the circle and adds colour
-        double magAsDouble = Double.parseDouble(currentEarthquake.getMagnitude());
-        // Set the proper background color on the magnitude circle.
-        // Fetch the background from the TextView, which is a GradientDrawable.
-        GradientDrawable magnitudeCircle = (GradientDrawable) magTextView.getBackground(); //THIS IS NEEDED TO DRAW THE CIRCLE
-        // Get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor(magAsDouble);
-        // Set the color on the magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
+    private void bind(ViewHolder holder, Earthquake currentEarthquake) {
+        // The display strings are cached on the Earthquake, so re-binding a row doesn't allocate
+        holder.magTextView.setText(currentEarthquake.getFormattedMagnitude());
+        holder.magnitudeCircle.setColor(getMagnitudeColor(currentEarthquake.getMagnitude()));
 
         //Splits text into 2 textfield depending on the text
-        // Find the TextView in the list_item.xml layout with the ID version_number
-        TextView disTextView = (TextView) listItemView.findViewById(R.id.distance_textView);
-        TextView locTextView = (TextView) listItemView.findViewById(R.id.location_textView);
-        if (currentEarthquake.getDistance() == "") {
-            disTextView.setVisibility(View.GONE);
-            locTextView.setText(currentEarthquake.getLocation());
+        String distance = currentEarthquake.getDistance();
+        if (distance.isEmpty()) {
+            holder.disTextView.setVisibility(View.GONE);
         }
         else {
-            disTextView.setVisibility(View.VISIBLE);
-            // Get the version number from the current AndroidFlavor object and
-            // set this text on the number TextView
-            disTextView.setText(currentEarthquake.getDistance());
-            locTextView.setText(currentEarthquake.getLocation());
+            holder.disTextView.setVisibility(View.VISIBLE);
+            holder.disTextView.setText(distance);
+        }
+        holder.locTextView.setText(currentEarthquake.getLocation());
+
+        holder.dateTextView.setText(currentEarthquake.getDate());
+        holder.timeTextView.setText(currentEarthquake.getTime());
+    }
+
+    /**
+     * Bind an empty row for an earthquake of a paged list that hasn't been loaded yet, it is
+     * re-bound once its page arrives.
+     */
+    private void bindPlaceholder(ViewHolder holder) {
+        holder.magTextView.setText(null);
+        holder.magnitudeCircle.setColor(placeholderColor);
+        holder.disTextView.setVisibility(View.GONE);
+        holder.locTextView.setText(null);
+        holder.dateTextView.setText(null);
+        holder.timeTextView.setText(null);
+    }
+
+    @Override
+    public int getItemCount() {
+        return earthquakes.size();
+    }
+
+    public Earthquake getItem(int position) {
+        return earthquakes.get(position);
+    }
+
+    /**
+     * Append a batch of earthquakes, only the new rows are bound.
+     */
+    public void addAll(List<Earthquake> batch) {
+        if (batch.isEmpty()) {
+            return;
         }
+        if (!(earthquakes instanceof ArrayList)) {
+            // e.g. a read-only catalog view, switch to a list we can grow
+            earthquakes = new ArrayList<>(earthquakes);
+        }
+        int start = earthquakes.size();
+        earthquakes.addAll(batch);
+        notifyItemRangeInserted(start, batch.size());
+    }
 
-        // Find the TextView in the list_item.xml layout with the ID version_number
-        TextView dateTextView = (TextView) listItemView.findViewById(R.id.date_textView);
-        // Get the version number from the current AndroidFlavor object and
-        // set this text on the number TextView
-        dateTextView.setText(currentEarthquake.getDate());
+    /**
+     * Replace the whole list. The old and new list are diffed by event id, so only rows that
+     * were inserted, removed, moved or changed are re-bound. Diffing a paged list reads (and
+     * loads) every row, use {@link #swapEarthquakes(List)} for those.
+     */
+    public void setEarthquakes(List<Earthquake> newEarthquakes) {
+        setEarthquakes(newEarthquakes, diff(earthquakes, newEarthquakes));
+    }
+
+    /**
+     * Replace the whole list with one that differs from the current one as described by a diff
+     * computed beforehand, e.g. on a worker thread. The changes are applied as one batch.
+     */
+    public void setEarthquakes(List<Earthquake> newEarthquakes, DiffUtil.DiffResult result) {
+        earthquakes = newEarthquakes;
+        result.dispatchUpdatesTo(this);
+    }
 
-        // Find the TextView in the list_item.xml layout with the ID version_number
-        TextView timeTextView = (TextView) listItemView.findViewById(R.id.time_textView);
-        // Get the version number from the current AndroidFlavor object and
-        // set this text on the number TextView
-        timeTextView.setText(currentEarthquake.getTime());
+    /**
+     * Diff two lists of earthquakes by event id, as {@link #setEarthquakes(List)} does. Can be
+     * called on any thread.
+     */
+    public static DiffUtil.DiffResult diff(List<Earthquake> oldList, List<Earthquake> newList) {
+        return DiffUtil.calculateDiff(new EarthquakeDiffCallback(oldList, newList));
+    }
 
-        // Return the whole list item layout (containing 2 TextViews and an ImageView)
-        // so that it can be shown in the ListView
-        return listItemView;
+    /**
+     * Replace the whole list without diffing, for changes that reorder most rows anyway, e.g. a
+     * new filter or sort order, where a diff would cost more than re-binding the visible rows.
+     */
+    public void swapEarthquakes(List<Earthquake> newEarthquakes) {
+        earthquakes = newEarthquakes;
+        notifyDataSetChanged();
     }
 
     private int getMagnitudeColor(double magnitude) {
-        int magnitudeColorResourceId;
         int magnitudeFloor = (int) Math.floor(magnitude); //remember floor ROUNDS DOWN TO A WHOLE NUMBER
-        switch (magnitudeFloor) {
-            case 0: //no break since it share the logic of case 1 (0 <= magnitudeColorResourceId < 2)
-            case 1:
-                magnitudeColorResourceId = R.color.magnitude1;
-                break;
-            case 2:
-                magnitudeColorResourceId = R.color.magnitude2; // (2 <= magnitudeColorResourceId < 3)
-                break;
-            case 3:
-                magnitudeColorResourceId = R.color.magnitude3; // (3 <= magnitudeColorResourceId < 4)
-                break;
-            case 4:
-                magnitudeColorResourceId = R.color.magnitude4; // (4 <= magnitudeColorResourceId < 5)
-                break;
-            case 5:
-                magnitudeColorResourceId = R.color.magnitude5; // (5 <= magnitudeColorResourceId < 6)
-                break;
-            case 6:
-                magnitudeColorResourceId = R.color.magnitude6; // (6 <= magnitudeColorResourceId < 7)
-                break;
-            case 7:
-                magnitudeColorResourceId = R.color.magnitude7; // (7 <= magnitudeColorResourceId < 8)
-                break;
-            case 8:
-                magnitudeColorResourceId = R.color.magnitude8; // (8 <= magnitudeColorResourceId < 9)
-                break;
-            case 9:
-                magnitudeColorResourceId = R.color.magnitude9; // (9 <= magnitudeColorResourceId < 10)
-                break;
-            default:
-                magnitudeColorResourceId = R.color.magnitude10plus; // (magnitudeColorResourceId > 10)
-                break;
+        if (magnitudeFloor < 0) {
+            magnitudeFloor = 0;
+        } else if (magnitudeFloor >= magnitudeColors.length) {
+            magnitudeFloor = magnitudeColors.length - 1;
         }
-        return ContextCompat.getColor(getContext(), magnitudeColorResourceId);
+        return magnitudeColors[magnitudeFloor];
     }
 
+    /**
+     * Compares two lists of earthquakes for {@link DiffUtil}. Rows of a paged list that aren't
+     * loaded yet are null, they never match anything.
+     */
+    private static class EarthquakeDiffCallback extends DiffUtil.Callback {
+        private final List<Earthquake> oldList;
+        private final List<Earthquake> newList;
+
+        EarthquakeDiffCallback(List<Earthquake> oldList, List<Earthquake> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
 
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            Earthquake oldEarthquake = oldList.get(oldItemPosition);
+            Earthquake newEarthquake = newList.get(newItemPosition);
+            if (oldEarthquake == null || newEarthquake == null) {
+                return false;
+            }
+            String oldId = oldEarthquake.getId();
+            return oldId != null && oldId.equals(newEarthquake.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Earthquake oldEarthquake = oldList.get(oldItemPosition);
+            Earthquake newEarthquake = newList.get(newItemPosition);
+            if (oldEarthquake == null || newEarthquake == null) {
+                return false;
+            }
+            // A revision from USGS bumps "updated", other changes can't happen without one
+            return oldEarthquake.getUpdated() == newEarthquake.getUpdated()
+                    && oldEarthquake.getMagnitude() == newEarthquake.getMagnitude()
+                    && oldEarthquake.getTimeInMillis() == newEarthquake.getTimeInMillis()
+                    && oldEarthquake.getPlace().equals(newEarthquake.getPlace());
+        }
+    }
 }
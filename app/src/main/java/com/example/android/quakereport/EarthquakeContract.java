@@ -0,0 +1,38 @@
+package com.example.android.quakereport;
+
+/**
+ * Table and column names of the local earthquake database.
+ */
+public final class EarthquakeContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeContract} object.
+     */
+    private EarthquakeContract() {
+    }
+
+    /**
+     * One row per USGS event, keyed on the event id.
+     */
+    public static final class EarthquakeEntry {
+
+        private EarthquakeEntry() {
+        }
+
+        public static final String TABLE_NAME = "earthquakes";
+
+        /** USGS event id, e.g. "us20004vvx" */
+        public static final String COLUMN_EVENT_ID = "event_id";
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+        public static final String COLUMN_PLACE = "place";
+        /** Event time in epoch millis */
+        public static final String COLUMN_TIME = "time";
+        /** Time of the last USGS revision in epoch millis, used to skip unchanged events on sync */
+        public static final String COLUMN_UPDATED = "updated";
+        public static final String COLUMN_TZ = "tz";
+        public static final String COLUMN_LATITUDE = "latitude";
+        public static final String COLUMN_LONGITUDE = "longitude";
+        public static final String COLUMN_DEPTH = "depth";
+        public static final String COLUMN_URL = "url";
+    }
+}
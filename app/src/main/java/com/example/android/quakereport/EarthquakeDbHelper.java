@@ -0,0 +1,64 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+
+/**
+ * Creates and upgrades the local earthquake database.
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    /** Version 2 adds the event id to the index on time, see {@link EarthquakeStore#ORDER_BY_TIME} */
+    private static final int DATABASE_VERSION = 2;
+
+    public EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT PRIMARY KEY NOT NULL, "
+                + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_PLACE + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_TZ + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_LATITUDE + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_LONGITUDE + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_DEPTH + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_URL + " TEXT NOT NULL);");
+        // The list is read newest first, or by magnitude
+        createTimeIndex(db);
+        db.execSQL("CREATE INDEX " + EarthquakeEntry.TABLE_NAME + "_magnitude ON "
+                + EarthquakeEntry.TABLE_NAME + " (" + EarthquakeEntry.COLUMN_MAGNITUDE + ");");
+    }
+
+    /**
+     * Index on time and event id, so reading in {@link EarthquakeStore#ORDER_BY_TIME} and paging
+     * through it by the last row read are both served by the index.
+     */
+    private static void createTimeIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + EarthquakeEntry.TABLE_NAME + "_time ON "
+                + EarthquakeEntry.TABLE_NAME + " (" + EarthquakeEntry.COLUMN_TIME + ", "
+                + EarthquakeEntry.COLUMN_EVENT_ID + ");");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion == 1) {
+            // Only the index changed, keep the rows so the snapshot and the store stay in step
+            db.execSQL("DROP INDEX IF EXISTS " + EarthquakeEntry.TABLE_NAME + "_time;");
+            createTimeIndex(db);
+            return;
+        }
+        // The database only caches the USGS feed, so it is simply rebuilt on the next sync
+        db.execSQL("DROP TABLE IF EXISTS " + EarthquakeEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,756 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.database.SQLException;
+import android.support.v4.app.Fragment;
+import android.support.v7.util.DiffUtil;
+import android.util.Log;
+
+import com.example.android.quakereport.EarthquakeListPatcher.PatchedList;
+import com.example.android.quakereport.EarthquakeListPatcher.Prefix;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless fragment that loads the earthquakes on a worker thread. The list is served right away
+ * from the memory-mapped {@link CatalogSnapshot} (written from the local {@link EarthquakeStore}
+ * if there is none yet), then the USGS feed is synced into the store in the background and a
+ * fresh snapshot replaces the list. The list handed out is an {@link EarthquakePagedList} over
+ * the snapshot, so only the rows around the scroll position are held in memory.
+ * On the very first launch there is nothing stored, so the parsed earthquakes are handed to the
+ * activity in batches as they arrive. They are only indexed for filtering once the stream ends.
+ * While the activity is started, the recent events are kept current by polling the USGS summary
+ * feed with an {@link EarthquakeFeedPoller}. An {@link EarthquakeListPatcher} patches the top of
+ * the list and its indexes in memory and only the changed rows are re-bound; the snapshot is
+ * rewritten once polling stops.
+ * The fragment is retained across configuration changes, so a rotation re-attaches to the
+ * running load (and everything delivered so far) instead of parsing again. The load is
+ * cancelled when the activity is finished for good.
+ */
+public class EarthquakeLoadFragment extends Fragment {
+
+    /** Tag the fragment is registered under in the FragmentManager */
+    public static final String TAG = "EarthquakeLoadFragment";
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeLoadFragment.class.getSimpleName();
+
+    /** Number of earthquakes parsed before a batch is written to the store (in one transaction) */
+    private static final int BATCH_SIZE = 250;
+
+    /** Size limit of the cached USGS responses */
+    private static final long RESPONSE_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Implemented by the hosting activity to receive the results. Always called on the main thread.
+     */
+    public interface Callbacks {
+        void onEarthquakesLoaded(List<Earthquake> batch);
+
+        void onEarthquakesReplaced(List<Earthquake> earthquakes);
+
+        /** The list changed as described by the diff, against the list delivered before */
+        void onEarthquakesUpdated(List<Earthquake> earthquakes, DiffUtil.DiffResult diff);
+
+        /** Rows [start, start + count) of the list have been loaded and can be re-bound */
+        void onEarthquakesPageLoaded(int start, int count);
+
+        /** The indexes behind {@link #query} now cover the current list */
+        void onEarthquakesIndexed();
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Loads list pages, separate from the executor so a running sync doesn't hold them up */
+    private final ExecutorService pageLoader = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Runs on the main thread through {@link #mainHandler}, for the core classes */
+    private final Executor mainThread = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mainHandler.post(command);
+        }
+    };
+
+    /**
+     * Everything delivered so far, only touched on the main thread. Lists handed out are never
+     * modified afterwards: while the first sync streams in, it is a {@link Prefix} of
+     * {@link #streamed}.
+     */
+    private List<Earthquake> earthquakes = new ArrayList<>();
+
+    /** The batches of the first sync, appended in place on the main thread */
+    private ArrayList<Earthquake> streamed;
+
+    /**
+     * Spatial index over the positions of {@link #earthquakes}, built by the first spatial query
+     * on a list and dropped when the list is replaced, so deliveries and polls don't pay for it
+     * until something asks. Only touched on the main thread.
+     */
+    private EarthquakeSpatialIndex spatialIndex;
+
+    /**
+     * Sorted indexes over {@link #earthquakes} for filtering. A new list is posted first and its
+     * indexes are built on the worker afterwards, so this is null until they are swapped in, and
+     * while the first sync streams in.
+     */
+    private EarthquakeQueryEngine queryEngine = new EarthquakeQueryEngine(earthquakes);
+
+    /**
+     * Holds the list last delivered and its query engine, only touched on the worker thread,
+     * where polls patch them.
+     */
+    private EarthquakeListPatcher listPatcher;
+
+    /**
+     * Whether the store changed since the snapshot was written, only touched on the worker
+     * thread. The snapshot file is deleted when that happens, so a cold start never shows a
+     * snapshot that is behind the store.
+     */
+    private boolean snapshotStale;
+
+    /** System.nanoTime() at the start of the load, 0 once the list first had something to show */
+    private volatile long loadStartedAt;
+
+    private Callbacks callbacks;
+    private Future<?> loadTask;
+    private Future<?> pollTask;
+    private EarthquakeFeedPoller feedPoller;
+
+    /** Polling state, only touched on the main thread */
+    private boolean polling;
+    private boolean pollInFlight;
+    private long nextPollAt;
+
+    private final Runnable pollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pollInFlight = true;
+            pollTask = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            });
+        }
+    };
+    private EarthquakeHttpClient httpClient;
+    private EarthquakeStore store;
+    private File snapshotFile;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // Keep this fragment (and the running load) when the activity is re-created
+        setRetainInstance(true);
+        File cacheDirectory = new File(getActivity().getCacheDir(), "usgs");
+        httpClient = new EarthquakeHttpClient(new ResponseDiskCache(cacheDirectory, RESPONSE_CACHE_SIZE));
+        store = new EarthquakeStore(getActivity().getApplicationContext());
+        snapshotFile = new File(getActivity().getFilesDir(), "catalog.snapshot");
+        listPatcher = new EarthquakeListPatcher(new EarthquakeListPatcher.Store() {
+            @Override
+            public List<Earthquake> querySince(long timeInMillis) {
+                return store.querySince(timeInMillis);
+            }
+
+            @Override
+            public long count() {
+                return store.count();
+            }
+
+            @Override
+            public void apply(EarthquakeFeedPoller.Delta delta) {
+                store.applyBatch(delta.getUpserts());
+                store.removeAll(delta.getRemovedIds());
+            }
+        }, earthquakes, queryEngine);
+        feedPoller = new EarthquakeFeedPoller(new EarthquakeFeedPoller.FeedSource() {
+            @Override
+            public boolean fetch(QueryUtils.OnEarthquakeParsedListener listener) throws IOException {
+                // A stale feed would look like deleted events, better to fail and retry later
+                return httpClient.fetchIfModified(EarthquakeFeedPoller.USGS_FEED_URL, listener);
+            }
+        });
+        // The load syncs the whole catalog, so the first poll can wait
+        nextPollAt = SystemClock.uptimeMillis() + EarthquakeFeedPoller.MIN_INTERVAL_MILLIS;
+        loadTask = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        callbacks = (Callbacks) context;
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        callbacks = null;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // Only called when the activity is really going away, since the instance is retained
+        if (loadTask != null) {
+            loadTask.cancel(true);
+        }
+        if (pollTask != null) {
+            pollTask.cancel(true);
+        }
+        // Close the database on the worker, once the cancelled load has let go of it
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                store.close();
+            }
+        });
+        executor.shutdown();
+        pageLoader.shutdown();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Start polling the live feed, e.g. when the activity is started. The next poll runs when it
+     * is due, right away if it was due while polling was stopped.
+     */
+    public void startPolling() {
+        polling = true;
+        if (!pollInFlight) {
+            mainHandler.removeCallbacks(pollRunnable);
+            mainHandler.postAtTime(pollRunnable, Math.max(nextPollAt, SystemClock.uptimeMillis()));
+        }
+    }
+
+    /**
+     * Stop polling the live feed, e.g. when the activity goes to the background. A poll that is
+     * running completes, but the next one isn't scheduled. The changes polls patched into the
+     * list are written to a new snapshot, for the next cold start.
+     */
+    public void stopPolling() {
+        polling = false;
+        mainHandler.removeCallbacks(pollRunnable);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshotIfStale();
+            }
+        });
+    }
+
+    /**
+     * Return the earthquakes delivered so far, for seeding a freshly created list.
+     */
+    public List<Earthquake> getEarthquakes() {
+        return Collections.unmodifiableList(earthquakes);
+    }
+
+    /**
+     * Return whether the indexes cover the current list. Until they do, {@link #query} returns
+     * nothing; {@link Callbacks#onEarthquakesIndexed()} follows.
+     */
+    public boolean isIndexed() {
+        return queryEngine != null;
+    }
+
+    /**
+     * Return the earthquakes within radiusKm of the point, in list order, e.g. for
+     * {@link EarthquakeAdapter#swapEarthquakes(List)}; rows of a paged list that aren't loaded
+     * yet are null. The first spatial query on a list indexes it, see {@link #spatialIndex()}.
+     * Call on the main thread.
+     */
+    public List<Earthquake> findWithinRadius(double latitude, double longitude, double radiusKm) {
+        return EarthquakeSpatialIndex.select(earthquakes, spatialIndex().queryRadius(latitude, longitude, radiusKm));
+    }
+
+    /**
+     * Return the earthquakes inside the bounding box, in list order, see
+     * {@link EarthquakeSpatialIndex#queryBox(double, double, double, double)} and
+     * {@link #findWithinRadius}. Call on the main thread.
+     */
+    public List<Earthquake> findInBox(double south, double west, double north, double east) {
+        return EarthquakeSpatialIndex.select(earthquakes, spatialIndex().queryBox(south, west, north, east));
+    }
+
+    /**
+     * Return the spatial index over {@link #earthquakes}, indexing the list if it has been
+     * replaced since the last spatial query. Rows a snapshot pages in are indexed straight from
+     * its records, so a paged list is indexed without decoding or loading any rows. Call on the
+     * main thread.
+     */
+    private EarthquakeSpatialIndex spatialIndex() {
+        if (spatialIndex == null) {
+            spatialIndex = buildIndex(earthquakes);
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Return the earthquakes of at least minMagnitude that happened in [fromTime, toTime], in the
+     * given {@link EarthquakeQueryEngine} sort order, e.g. for
+     * {@link EarthquakeAdapter#swapEarthquakes(List)}. Empty until {@link #isIndexed()}. Call on
+     * the main thread.
+     */
+    public List<Earthquake> query(double minMagnitude, long fromTime, long toTime, int sortOrder) {
+        if (queryEngine == null) {
+            return Collections.emptyList();
+        }
+        return queryEngine.query(minMagnitude, fromTime, toTime, sortOrder);
+    }
+
+    /**
+     * Runs on the worker thread.
+     */
+    private void load() {
+        loadStartedAt = System.nanoTime();
+        try {
+            // Cold start: show what we already have without waiting for the network
+            CatalogSnapshot snapshot = openSnapshot();
+            boolean firstSync = false;
+            if (snapshot != null) {
+                deliverSnapshot(snapshot, null);
+                if (!verifySnapshot(snapshot)) {
+                    deliverStored(null);
+                }
+            } else if (store.count() > 0) {
+                deliverStored(null);
+            } else {
+                firstSync = true;
+            }
+
+            if (sync(firstSync) > 0) {
+                deliverStored(null);
+            }
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem reading or writing the earthquake database", e);
+        } catch (RuntimeException e) {
+            // The future would swallow it, and the load would just silently stop
+            Log.e(LOG_TAG, "Problem loading the earthquakes", e);
+        }
+    }
+
+    /**
+     * Poll the live feed and apply what changed. Runs on the worker thread. Unless the poll was
+     * cancelled, the next one is always scheduled, also when this one failed in an unexpected way.
+     */
+    private void poll() {
+        boolean succeeded = false;
+        boolean cancelled = false;
+        long delay = 0;
+        try {
+            List<Earthquake> feed = feedPoller.fetch();
+            boolean changed = false;
+            // An unchanged feed (304) was applied by an earlier poll already
+            if (feed != null) {
+                changed = applyFeed(feed);
+            }
+            delay = feedPoller.onPollSucceeded(changed);
+            succeeded = true;
+        } catch (IOException e) {
+            if (EarthquakeHttpClient.isCancelled(e)) {
+                // Cancelled, the fragment is going away
+                cancelled = true;
+                return;
+            }
+            // Including timeouts, the poll is retried after a backoff
+            Log.w(LOG_TAG, "Problem polling the live feed", e);
+        } catch (IllegalStateException e) {
+            Log.w(LOG_TAG, "Problem polling the live feed", e);
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem applying the live feed to the earthquake database", e);
+        } catch (RuntimeException e) {
+            // The future would swallow it, and leave polling stuck
+            Log.e(LOG_TAG, "Problem applying the live feed", e);
+        } finally {
+            if (!cancelled) {
+                schedulePoll(succeeded ? delay : feedPoller.onPollFailed());
+            }
+        }
+    }
+
+    /**
+     * Let the main thread know the poll is done and schedule the next one after delay.
+     */
+    private void schedulePoll(final long nextDelay) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pollInFlight = false;
+                nextPollAt = SystemClock.uptimeMillis() + nextDelay;
+                if (polling) {
+                    mainHandler.postAtTime(pollRunnable, nextPollAt);
+                }
+            }
+        });
+    }
+
+    /**
+     * Diff the feed against the store and apply the changes to the store and the list. Returns
+     * whether anything changed.
+     */
+    private boolean applyFeed(List<Earthquake> feed) {
+        EarthquakeListPatcher.Update update = listPatcher.apply(feed);
+        if (update == null) {
+            return false;
+        }
+        invalidateSnapshot();
+        if (update.getBefore() == null) {
+            deliverStored(null);
+            return true;
+        }
+        // Only the top rows changed, diffing them is enough
+        DiffUtil.DiffResult diff = EarthquakeAdapter.diff(update.getBefore(), update.getAfter());
+        if (update.getList() == null) {
+            // A fresh snapshot folds the patches in, and keeps the list paged
+            deliverStored(diff);
+        } else {
+            deliverAll(update.getList(), update.getEngine(), diff);
+        }
+        return true;
+    }
+
+    /**
+     * Merge the USGS feed into the store, batch by batch. When showWhileParsing is set, each batch
+     * is also appended to the list. Returns the number of events that were new or revised.
+     * Otherwise the store already holds the cached response, so an unchanged response isn't
+     * parsed or stored again.
+     */
+    private int sync(final boolean showWhileParsing) {
+        final ArrayList<Earthquake> pending = new ArrayList<>(BATCH_SIZE);
+        final int[] written = new int[1];
+        try {
+            QueryUtils.OnEarthquakeParsedListener listener = new QueryUtils.OnEarthquakeParsedListener() {
+                @Override
+                public void onEarthquakeParsed(Earthquake earthquake) {
+                    pending.add(earthquake);
+                    if (pending.size() == BATCH_SIZE) {
+                        written[0] += flush(pending, showWhileParsing);
+                    }
+                }
+            };
+            if (showWhileParsing) {
+                // Nothing is stored yet, even an unchanged response has to be parsed
+                httpClient.fetch(QueryUtils.USGS_REQUEST_URL, listener);
+            } else if (!httpClient.fetchIfModified(QueryUtils.USGS_REQUEST_URL, listener)) {
+                return 0;
+            }
+        } catch (IOException e) {
+            if (EarthquakeHttpClient.isCancelled(e)) {
+                // Cancelled, nobody is waiting for the results any more
+                return 0;
+            }
+            Log.e(LOG_TAG, "Problem loading the earthquake results", e);
+        } catch (IllegalStateException e) {
+            Log.e(LOG_TAG, "Problem loading the earthquake results", e);
+        }
+        // Keep whatever was received, even if the download broke off or timed out
+        written[0] += flush(pending, showWhileParsing);
+        return written[0];
+    }
+
+    private int flush(ArrayList<Earthquake> pending, boolean showWhileParsing) {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int written = store.applyBatch(pending);
+        if (written > 0) {
+            invalidateSnapshot();
+        }
+        if (showWhileParsing) {
+            deliver(new ArrayList<>(pending));
+        }
+        pending.clear();
+        return written;
+    }
+
+    /**
+     * Return the snapshot written by the last successful load, or null if there is no usable one.
+     */
+    private CatalogSnapshot openSnapshot() {
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        try {
+            return CatalogSnapshot.open(snapshotFile);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Discarding unreadable catalog snapshot", e);
+            snapshotFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Check the strings of a snapshot opened by {@link #openSnapshot()}, which only checked its
+     * records so the first rows could be shown sooner. Runs on the worker thread. Return false,
+     * and delete the snapshot, if they are corrupt.
+     */
+    private boolean verifySnapshot(CatalogSnapshot snapshot) {
+        try {
+            snapshot.verifyPool();
+            return true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Discarding corrupt catalog snapshot", e);
+            snapshotFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Delete the snapshot once the store has changed, until {@link #writeSnapshot()} catches up.
+     * Runs on the worker thread. A list mapping the file keeps reading it.
+     */
+    private void invalidateSnapshot() {
+        if (!snapshotStale) {
+            snapshotStale = true;
+            snapshotFile.delete();
+        }
+    }
+
+    /**
+     * Write the stored catalog to a new snapshot. The store is read a page at a time, so the rows
+     * are never all in memory, and the writer streams the strings to the file as it goes.
+     * Runs on the worker thread.
+     */
+    private void writeSnapshot() throws IOException {
+        CatalogSnapshot.write(snapshotFile, store.asList());
+        snapshotStale = false;
+    }
+
+    /**
+     * Write a new snapshot if polls only patched the list in memory. Runs on the worker thread.
+     */
+    private void writeSnapshotIfStale() {
+        if (!snapshotStale) {
+            return;
+        }
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem writing the catalog snapshot", e);
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem reading the earthquake database", e);
+        }
+    }
+
+    /**
+     * Write the stored catalog to a new snapshot and replace the list with it, see
+     * {@link #writeSnapshot()}. If the snapshot can't be written, the list is replaced by the
+     * whole stored catalog instead. The diff, if any, describes the change against the list
+     * delivered before.
+     */
+    private void deliverStored(DiffUtil.DiffResult diff) {
+        try {
+            writeSnapshot();
+            deliverSnapshot(CatalogSnapshot.open(snapshotFile), diff);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem writing the catalog snapshot", e);
+            List<Earthquake> all = store.query(EarthquakeStore.ORDER_BY_TIME);
+            deliverAll(all, null, diff);
+            deliverEngine(all, new EarthquakeQueryEngine(all));
+        }
+    }
+
+    /**
+     * Replace the list with a paged view of the snapshot. The pages around where the list it
+     * replaces was scrolled to are decoded here, before the list is posted, so those rows don't
+     * flash to placeholders; the rest are decoded on the page loader. Either way only one thread
+     * at a time reads rows from this snapshot. The list is posted before its indexes are built,
+     * so the first rows don't wait for the sorts.
+     */
+    private void deliverSnapshot(final CatalogSnapshot snapshot, DiffUtil.DiffResult diff) {
+        final EarthquakePagedList paged = new EarthquakePagedList(new SnapshotPageSource(snapshot),
+                snapshot.size(), pageLoader, mainThread);
+        paged.setOnPageLoadedListener(new EarthquakePagedList.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(int start, int count) {
+                // Pages of a list that has been replaced since are of no interest
+                if (callbacks == null) {
+                    return;
+                }
+                if (earthquakes == paged) {
+                    callbacks.onEarthquakesPageLoaded(start, count);
+                } else if (earthquakes instanceof PatchedList && ((PatchedList) earthquakes).getBase() == paged) {
+                    // Polls put their rows in front of the paged ones, shift the page to where it is shown
+                    PatchedList patched = (PatchedList) earthquakes;
+                    int from = Math.max(start, patched.getBaseOffset());
+                    if (from < start + count) {
+                        callbacks.onEarthquakesPageLoaded(patched.toPosition(from), start + count - from);
+                    }
+                }
+            }
+        });
+        paged.preload(scrollPosition(listPatcher.getList()));
+        deliverAll(paged, null, diff);
+        deliverEngine(paged, new EarthquakeQueryEngine(paged, snapshot));
+    }
+
+    /**
+     * Return roughly where a delivered list is scrolled to, as far as its paged rows tell, or 0.
+     */
+    private static int scrollPosition(List<Earthquake> list) {
+        if (list instanceof EarthquakePagedList) {
+            return ((EarthquakePagedList) list).getLastPosition();
+        }
+        if (list instanceof PatchedList && ((PatchedList) list).getBase() instanceof EarthquakePagedList) {
+            PatchedList patched = (PatchedList) list;
+            return Math.max(0, patched.toPosition(((EarthquakePagedList) patched.getBase()).getLastPosition()));
+        }
+        return 0;
+    }
+
+    /**
+     * Index a delivered list by position. The rows of a snapshot's paged list, also behind the
+     * rows polls put in front of it, are indexed from the snapshot's records; the other rows are
+     * in memory.
+     */
+    private static EarthquakeSpatialIndex buildIndex(List<Earthquake> list) {
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex();
+        List<Earthquake> base = list;
+        int baseOffset = 0;
+        int position = 0;
+        if (list instanceof PatchedList) {
+            PatchedList patched = (PatchedList) list;
+            base = patched.getBase();
+            baseOffset = patched.getBaseOffset();
+            for (int headSize = patched.toPosition(baseOffset); position < headSize; position++) {
+                Earthquake earthquake = list.get(position);
+                index.add(position, earthquake.getLatitude(), earthquake.getLongitude());
+            }
+        }
+        CatalogSnapshot snapshot = null;
+        if (base instanceof EarthquakePagedList
+                && ((EarthquakePagedList) base).getSource() instanceof SnapshotPageSource) {
+            snapshot = ((SnapshotPageSource) ((EarthquakePagedList) base).getSource()).snapshot;
+        }
+        for (int i = baseOffset; i < base.size(); i++, position++) {
+            if (snapshot != null) {
+                index.add(position, snapshot.getLatitude(i), snapshot.getLongitude(i));
+            } else {
+                Earthquake earthquake = base.get(i);
+                index.add(position, earthquake.getLatitude(), earthquake.getLongitude());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Decodes the rows of a snapshot for a paged list.
+     */
+    private static class SnapshotPageSource implements EarthquakePagedList.PageSource {
+        final CatalogSnapshot snapshot;
+
+        SnapshotPageSource(CatalogSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public List<Earthquake> loadPage(int offset, int limit) {
+            ArrayList<Earthquake> rows = new ArrayList<>(limit);
+            for (int i = offset; i < offset + limit; i++) {
+                rows.add(snapshot.get(i));
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Replace the whole list on the main thread, together with its query engine, or with null if
+     * it follows in {@link #deliverEngine}. With a diff against the list delivered before, the
+     * activity is told what changed, otherwise the list is just replaced.
+     */
+    private void deliverAll(final List<Earthquake> all, final EarthquakeQueryEngine engine,
+                            final DiffUtil.DiffResult diff) {
+        listPatcher.setList(all, engine);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                recordLoadLatency();
+                streamed = null;
+                earthquakes = all;
+                spatialIndex = null;
+                queryEngine = engine;
+                if (callbacks == null) {
+                    return;
+                }
+                if (diff != null) {
+                    callbacks.onEarthquakesUpdated(Collections.unmodifiableList(all), diff);
+                } else {
+                    callbacks.onEarthquakesReplaced(Collections.unmodifiableList(all));
+                }
+            }
+        });
+    }
+
+    /**
+     * Swap in the query engine of a list delivered by {@link #deliverAll}, unless it has been
+     * replaced since.
+     */
+    private void deliverEngine(final List<Earthquake> all, final EarthquakeQueryEngine engine) {
+        listPatcher.setEngine(all, engine);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (earthquakes != all) {
+                    return;
+                }
+                queryEngine = engine;
+                if (callbacks != null) {
+                    callbacks.onEarthquakesIndexed();
+                }
+            }
+        });
+    }
+
+    /**
+     * Hand a batch over to the main thread. The batch is added to {@link #earthquakes} there too,
+     * so a list seeded from {@link #getEarthquakes()} never misses or duplicates a batch.
+     */
+    private void deliver(final List<Earthquake> batch) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                recordLoadLatency();
+                spatialIndex = null;
+                if (streamed == null) {
+                    streamed = new ArrayList<>(earthquakes);
+                }
+                // Lists handed out before only see the rows they were handed out with
+                streamed.addAll(batch);
+                earthquakes = new Prefix(streamed, streamed.size());
+                // Sorting on every batch would be wasted, the list is indexed once the sync is done
+                queryEngine = null;
+                if (callbacks != null) {
+                    callbacks.onEarthquakesLoaded(batch);
+                }
+            }
+        });
+    }
+
+    /**
+     * Record the time until the list first had something to show. Called on the main thread.
+     */
+    private void recordLoadLatency() {
+        if (loadStartedAt != 0) {
+            EarthquakeMetrics.get().getLoadLatency().record(System.nanoTime() - loadStartedAt);
+            loadStartedAt = 0;
+        }
+    }
+}
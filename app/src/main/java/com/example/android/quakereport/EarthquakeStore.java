@@ -0,0 +1,247 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+/**
+ * Local copy of the USGS catalog. Events are upserted by their USGS id, and a row is only
+ * rewritten when the incoming feature has a newer "updated" time than the stored one, so
+ * a sync only pays for what actually changed. Not thread-safe, use it from one worker thread.
+ */
+public class EarthquakeStore {
+
+    /**
+     * Newest events first, served by the index on time. Ties are broken by event id, so the order
+     * is the same on every read and {@link #asList()} can page by the last row it read.
+     */
+    public static final String ORDER_BY_TIME = EarthquakeEntry.COLUMN_TIME + " DESC, "
+            + EarthquakeEntry.COLUMN_EVENT_ID + " DESC";
+
+    /** Strongest events first, served by the index on magnitude */
+    public static final String ORDER_BY_MAGNITUDE = EarthquakeEntry.COLUMN_MAGNITUDE + " DESC";
+
+    /** Rows read at once by {@link #asList()} */
+    private static final int SCAN_PAGE_SIZE = 1000;
+
+    /**
+     * The rows after a given row in {@link #ORDER_BY_TIME}, bound to its time twice and its event
+     * id. The first term is the range on the index, the second one only skips the ties before it.
+     */
+    private static final String AFTER_BY_TIME = EarthquakeEntry.COLUMN_TIME + " <= ? AND ("
+            + EarthquakeEntry.COLUMN_TIME + " < ? OR " + EarthquakeEntry.COLUMN_EVENT_ID + " < ?)";
+
+    private static final String[] PROJECTION = {
+            EarthquakeEntry.COLUMN_EVENT_ID,
+            EarthquakeEntry.COLUMN_MAGNITUDE,
+            EarthquakeEntry.COLUMN_PLACE,
+            EarthquakeEntry.COLUMN_TIME,
+            EarthquakeEntry.COLUMN_UPDATED,
+            EarthquakeEntry.COLUMN_TZ,
+            EarthquakeEntry.COLUMN_LATITUDE,
+            EarthquakeEntry.COLUMN_LONGITUDE,
+            EarthquakeEntry.COLUMN_DEPTH,
+            EarthquakeEntry.COLUMN_URL
+    };
+
+    /**
+     * Insert or replace the row, unless the stored row is at least as recent. The event id and
+     * updated time are bound a second time (parameters 11 and 12) for the NOT EXISTS check.
+     */
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO " + EarthquakeEntry.TABLE_NAME + " ("
+            + EarthquakeEntry.COLUMN_EVENT_ID + ", "
+            + EarthquakeEntry.COLUMN_MAGNITUDE + ", "
+            + EarthquakeEntry.COLUMN_PLACE + ", "
+            + EarthquakeEntry.COLUMN_TIME + ", "
+            + EarthquakeEntry.COLUMN_UPDATED + ", "
+            + EarthquakeEntry.COLUMN_TZ + ", "
+            + EarthquakeEntry.COLUMN_LATITUDE + ", "
+            + EarthquakeEntry.COLUMN_LONGITUDE + ", "
+            + EarthquakeEntry.COLUMN_DEPTH + ", "
+            + EarthquakeEntry.COLUMN_URL + ") "
+            + "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM "
+            + EarthquakeEntry.TABLE_NAME + " WHERE " + EarthquakeEntry.COLUMN_EVENT_ID + " = ? AND "
+            + EarthquakeEntry.COLUMN_UPDATED + " >= ?)";
+
+    private final EarthquakeDbHelper dbHelper;
+    private SQLiteStatement upsertStatement;
+
+    public EarthquakeStore(Context context) {
+        dbHelper = new EarthquakeDbHelper(context);
+    }
+
+    /**
+     * Apply a batch of parsed features in a single transaction. Features without an id, or that
+     * are not newer than the stored event, are skipped. Returns the number of rows written.
+     */
+    public int applyBatch(List<Earthquake> earthquakes) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        if (upsertStatement == null) {
+            upsertStatement = db.compileStatement(UPSERT_SQL);
+        }
+        int written = 0;
+        db.beginTransaction();
+        try {
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getId() == null) {
+                    continue;
+                }
+                SQLiteStatement statement = upsertStatement;
+                statement.clearBindings();
+                statement.bindString(1, earthquake.getId());
+                statement.bindDouble(2, earthquake.getMagnitude());
+                statement.bindString(3, earthquake.getPlace());
+                statement.bindLong(4, earthquake.getTimeInMillis());
+                statement.bindLong(5, earthquake.getUpdated());
+                statement.bindLong(6, earthquake.getTz());
+                statement.bindDouble(7, earthquake.getLatitude());
+                statement.bindDouble(8, earthquake.getLongitude());
+                statement.bindDouble(9, earthquake.getDepth());
+                statement.bindString(10, earthquake.getUrl());
+                statement.bindString(11, earthquake.getId());
+                statement.bindLong(12, earthquake.getUpdated());
+                written += statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return written;
+    }
+
+    /**
+     * Delete the events with the given ids in a single transaction. Returns the number of rows
+     * deleted.
+     */
+    public int removeAll(List<String> ids) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int deleted = 0;
+        db.beginTransaction();
+        try {
+            for (String id : ids) {
+                deleted += db.delete(EarthquakeEntry.TABLE_NAME,
+                        EarthquakeEntry.COLUMN_EVENT_ID + " = ?", new String[]{id});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return deleted;
+    }
+
+    /**
+     * Return the number of stored events.
+     */
+    public long count() {
+        return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), EarthquakeEntry.TABLE_NAME);
+    }
+
+    /**
+     * Return all stored events in the given order, e.g. {@link #ORDER_BY_TIME}.
+     */
+    public ArrayList<Earthquake> query(String orderBy) {
+        return query(orderBy, null);
+    }
+
+    /**
+     * Return stored events in the given order. The limit is a SQL limit clause, e.g. "100" or
+     * "200,100" for 100 rows starting at offset 200, or null for all of them.
+     */
+    public ArrayList<Earthquake> query(String orderBy, String limit) {
+        return query(null, null, orderBy, limit);
+    }
+
+    /**
+     * Return the stored events at or after the given time, newest first, served by the index
+     * on time. These are the top rows of a list in {@link #ORDER_BY_TIME}.
+     */
+    public ArrayList<Earthquake> querySince(long timeInMillis) {
+        return query(EarthquakeEntry.COLUMN_TIME + " >= ?", new String[]{String.valueOf(timeInMillis)},
+                ORDER_BY_TIME, null);
+    }
+
+    private ArrayList<Earthquake> query(String selection, String[] selectionArgs, String orderBy, String limit) {
+        Cursor cursor = dbHelper.getReadableDatabase().query(EarthquakeEntry.TABLE_NAME, PROJECTION,
+                selection, selectionArgs, null, null, orderBy, limit);
+        try {
+            ArrayList<Earthquake> earthquakes = new ArrayList<>(cursor.getCount());
+            // PROJECTION fixes the column indexes
+            while (cursor.moveToNext()) {
+                earthquakes.add(new Earthquake(cursor.getString(0), cursor.getDouble(1),
+                        cursor.getString(2), cursor.getLong(3), cursor.getLong(4), cursor.getInt(5),
+                        cursor.getDouble(6), cursor.getDouble(7), cursor.getDouble(8),
+                        cursor.getString(9)));
+            }
+            return earthquakes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return a read-only view of all stored events in {@link #ORDER_BY_TIME} that reads them
+     * SCAN_PAGE_SIZE rows at a time and only keeps the current page, for a sequential pass
+     * such as writing a {@link CatalogSnapshot}. Each page starts after the last row of the one
+     * before rather than at an offset, which SQLite would have to step over row by row, so a
+     * pass is linear in the size of the store. Going back starts over from the first page.
+     * Only use it while the store doesn't change.
+     */
+    public List<Earthquake> asList() {
+        final int size = (int) count();
+        final String limit = String.valueOf(SCAN_PAGE_SIZE);
+        return new AbstractList<Earthquake>() {
+            private int pageStart;
+            private List<Earthquake> page = Collections.emptyList();
+
+            @Override
+            public Earthquake get(int position) {
+                if (position < 0 || position >= size) {
+                    throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+                }
+                if (position < pageStart) {
+                    pageStart = 0;
+                    page = Collections.emptyList();
+                }
+                while (position >= pageStart + page.size()) {
+                    List<Earthquake> next;
+                    if (page.isEmpty()) {
+                        next = query(null, null, ORDER_BY_TIME, limit);
+                    } else {
+                        Earthquake last = page.get(page.size() - 1);
+                        String time = String.valueOf(last.getTimeInMillis());
+                        next = query(AFTER_BY_TIME, new String[]{time, time, last.getId()}, ORDER_BY_TIME, limit);
+                    }
+                    if (next.isEmpty()) {
+                        throw new ConcurrentModificationException("Rows were removed from the store");
+                    }
+                    pageStart += page.size();
+                    page = next;
+                }
+                return page.get(position - pageStart);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public void close() {
+        if (upsertStatement != null) {
+            upsertStatement.close();
+            upsertStatement = null;
+        }
+        dbHelper.close();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeFormatter;
+import com.example.android.quakereport.SyntheticGeoJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Display strings of a row, as the adapter binds them. Each operation is one row.
+ */
+@State(Scope.Thread)
+public class FormatBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private Earthquake[] earthquakes;
+
+    @Setup
+    public void generate() {
+        List<Earthquake> generated = SyntheticGeoJson.earthquakes(ROWS, ROWS);
+        earthquakes = generated.toArray(new Earthquake[ROWS]);
+    }
+
+    /**
+     * First bind of a freshly parsed event: every string is formatted and cached on the event.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void firstBind(Blackhole blackhole) {
+        for (Earthquake prototype : earthquakes) {
+            Earthquake earthquake = new Earthquake(prototype.getId(), prototype.getMagnitude(),
+                    prototype.getPlace(), prototype.getTimeInMillis(), prototype.getUpdated(),
+                    prototype.getTz(), prototype.getLatitude(), prototype.getLongitude(),
+                    prototype.getDepth(), prototype.getUrl());
+            bind(earthquake, blackhole);
+        }
+    }
+
+    /**
+     * Re-binding an event that was shown before, served from the strings cached on it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void rebind(Blackhole blackhole) {
+        for (Earthquake earthquake : earthquakes) {
+            bind(earthquake, blackhole);
+        }
+    }
+
+    /**
+     * The shared per-thread formatter alone, with its day and minute caches.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void formatter(Blackhole blackhole) {
+        EarthquakeFormatter formatter = EarthquakeFormatter.get();
+        for (Earthquake earthquake : earthquakes) {
+            blackhole.consume(formatter.formatMagnitude(earthquake.getMagnitude()));
+            blackhole.consume(formatter.formatDate(earthquake.getTimeInMillis()));
+            blackhole.consume(formatter.formatTime(earthquake.getTimeInMillis()));
+        }
+    }
+
+    private static void bind(Earthquake earthquake, Blackhole blackhole) {
+        blackhole.consume(earthquake.getFormattedMagnitude());
+        blackhole.consume(earthquake.getDistance());
+        blackhole.consume(earthquake.getLocation());
+        blackhole.consume(earthquake.getDate());
+        blackhole.consume(earthquake.getTime());
+    }
+}
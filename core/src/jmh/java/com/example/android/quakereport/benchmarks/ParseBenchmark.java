@@ -0,0 +1,43 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.SyntheticGeoJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Streaming parse of a whole response, as the sync does it, at each catalog size.
+ * Features per second is the throughput times the feature count.
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int features;
+
+    private byte[] document;
+
+    @Setup
+    public void generate() {
+        document = SyntheticGeoJson.generate(features, features);
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws IOException {
+        QueryUtils.parseEarthquakes(new ByteArrayInputStream(document), new QueryUtils.OnEarthquakeParsedListener() {
+            @Override
+            public void onEarthquakeParsed(Earthquake earthquake) {
+                blackhole.consume(earthquake);
+            }
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeQueryEngine;
+import com.example.android.quakereport.EarthquakeSpatialIndex;
+import com.example.android.quakereport.SyntheticGeoJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Building the query indexes for a catalog, and the filter, sort and spatial queries the list
+ * runs on them. Query results are consumed the way the list does: a screen of rows.
+ */
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    /** Rows on a screen */
+    private static final int VISIBLE_ROWS = 20;
+
+    private static final long WEEK_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int events;
+
+    private List<Earthquake> earthquakes;
+    private EarthquakeQueryEngine engine;
+    private EarthquakeSpatialIndex spatialIndex;
+    private long newestTime;
+
+    @Setup
+    public void generate() {
+        earthquakes = SyntheticGeoJson.earthquakes(events, events);
+        engine = new EarthquakeQueryEngine(earthquakes);
+        spatialIndex = new EarthquakeSpatialIndex();
+        spatialIndex.addAll(earthquakes);
+        newestTime = earthquakes.get(0).getTimeInMillis();
+    }
+
+    @Benchmark
+    public EarthquakeQueryEngine buildQueryEngine() {
+        return new EarthquakeQueryEngine(earthquakes);
+    }
+
+    @Benchmark
+    public EarthquakeSpatialIndex buildSpatialIndex() {
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex();
+        index.addAll(earthquakes);
+        return index;
+    }
+
+    @Benchmark
+    public void filterByMagnitudeAndTime(Blackhole blackhole) {
+        consumeScreen(engine.query(4.5, newestTime - WEEK_MILLIS, Long.MAX_VALUE,
+                EarthquakeQueryEngine.SORT_BY_TIME), blackhole);
+    }
+
+    @Benchmark
+    public void sortByMagnitude(Blackhole blackhole) {
+        consumeScreen(engine.query(EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE, Long.MIN_VALUE,
+                Long.MAX_VALUE, EarthquakeQueryEngine.SORT_BY_MAGNITUDE), blackhole);
+    }
+
+    @Benchmark
+    public void withinRadius(Blackhole blackhole) {
+        // Around Tokyo
+        consumeScreen(EarthquakeSpatialIndex.select(earthquakes,
+                spatialIndex.queryRadius(35.68, 139.69, 1000)), blackhole);
+    }
+
+    private static void consumeScreen(List<Earthquake> result, Blackhole blackhole) {
+        blackhole.consume(result.size());
+        for (int i = 0; i < Math.min(VISIBLE_ROWS, result.size()); i++) {
+            blackhole.consume(result.get(i));
+        }
+    }
+}
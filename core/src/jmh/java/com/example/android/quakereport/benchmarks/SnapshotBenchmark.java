@@ -0,0 +1,78 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.CatalogSnapshot;
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.SyntheticGeoJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Time to the first row on a cold start: opening the snapshot and decoding row 0, against
+ * parsing the JSON response up to its first feature. Opening checksums the records, so this
+ * shows how that pass grows with the catalog compared to the parser's fixed head start.
+ */
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"10000", "100000"})
+    public int features;
+
+    private File snapshot;
+    private byte[] document;
+
+    @Setup
+    public void write() throws IOException {
+        document = SyntheticGeoJson.generate(features, features);
+        snapshot = File.createTempFile("catalog", ".snapshot");
+        CatalogSnapshot.write(snapshot, SyntheticGeoJson.earthquakes(features, features));
+    }
+
+    @TearDown
+    public void delete() {
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public Earthquake openSnapshot() throws IOException {
+        return CatalogSnapshot.open(snapshot).get(0);
+    }
+
+    @Benchmark
+    public Earthquake parseFirstFeature() throws IOException {
+        final Earthquake[] first = new Earthquake[1];
+        try {
+            QueryUtils.parseEarthquakes(new ByteArrayInputStream(document), new QueryUtils.OnEarthquakeParsedListener() {
+                @Override
+                public void onEarthquakeParsed(Earthquake earthquake) {
+                    first[0] = earthquake;
+                    throw FirstFeature.INSTANCE;
+                }
+            });
+        } catch (FirstFeature e) {
+            // Stopped the parse, the rest of the document isn't needed for the first row
+        }
+        return first[0];
+    }
+
+    /**
+     * Thrown by the listener to stop the parse. Preallocated without a stack trace, so stopping
+     * costs nothing the snapshot side doesn't pay too.
+     */
+    private static class FirstFeature extends RuntimeException {
+        static final FirstFeature INSTANCE = new FirstFeature();
+
+        private FirstFeature() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the catalog for instant cold starts. The file is memory-mapped on open and
+ * rows are decoded only when asked for, so opening a 100k-event snapshot costs a checksum pass
+ * over the fixed-width records instead of a full parse. The strings have their own checksum,
+ * checked by {@link #verifyPool()} once the first rows are up.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header   magic, version, count, string pool offset, string pool length, CRC32 of the
+ *          records, CRC32 of the pool (HEADER_SIZE bytes, padded so records are 8-byte aligned)
+ * records  count fixed-width records of RECORD_SIZE bytes: magnitude, time, updated, tz,
+ *          latitude, longitude, depth, then the pool offsets of id, place and url
+ * pool     strings, each an int byte length followed by the UTF-8 bytes; places are shared
+ *          between the events they repeat in
+ * </pre>
+ */
+public class CatalogSnapshot {
+
+    private static final int MAGIC = 0x514b534e; // "QKSN"
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 40;
+    private static final int RECORD_SIZE = 8 + 8 + 8 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+
+    /** Pool offset of a null string */
+    private static final int NO_STRING = -1;
+
+    /** Number of decoded rows kept around, so re-binding a row doesn't decode it again */
+    private static final int ROW_CACHE_SIZE = 256;
+
+    /** Distinct places the writer shares, later ones are written once per event */
+    private static final int MAX_SHARED_PLACES = 8192;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int poolOffset;
+    private final long poolChecksum;
+    private final Earthquake[] rowCache = new Earthquake[ROW_CACHE_SIZE];
+    private final int[] rowCachePositions = new int[ROW_CACHE_SIZE];
+
+    private CatalogSnapshot(ByteBuffer buffer, int count, int poolOffset, long poolChecksum) {
+        this.buffer = buffer;
+        this.count = count;
+        this.poolOffset = poolOffset;
+        this.poolChecksum = poolChecksum;
+        Arrays.fill(rowCachePositions, -1);
+    }
+
+    /**
+     * Map the snapshot file and check its header and the checksum of its records, but not yet
+     * the one of the string pool, see {@link #verifyPool()}.
+     * Throws an IOException if the file is missing, from another version, or corrupt.
+     */
+    public static CatalogSnapshot open(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            // The mapping stays valid after the file is closed
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog snapshot: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog snapshot version " + buffer.getInt(4));
+        }
+        int count = buffer.getInt(8);
+        int poolOffset = buffer.getInt(12);
+        int poolLength = buffer.getInt(16);
+        long recordsChecksum = buffer.getLong(20);
+        long poolChecksum = buffer.getLong(28);
+        if (count < 0 || poolOffset != HEADER_SIZE + (long) count * RECORD_SIZE
+                || poolLength < 0 || (long) poolOffset + poolLength != buffer.limit()) {
+            throw new IOException("Truncated catalog snapshot: " + file);
+        }
+        // The records hold the pool offsets, so a pool that checks out later can be trusted
+        if (checksum(buffer, HEADER_SIZE, poolOffset) != recordsChecksum) {
+            throw new IOException("Corrupt catalog snapshot: " + file);
+        }
+        return new CatalogSnapshot(buffer, count, poolOffset, poolChecksum);
+    }
+
+    /**
+     * Write the earthquakes to a snapshot file. The file is written next to the target and
+     * renamed into place, so a crash never leaves a half-written snapshot behind. The list is
+     * read once, row by row. The strings go straight to a pool file of their own, appended to the
+     * records at the end, so the writer only holds the places it shares.
+     */
+    public static void write(File file, List<Earthquake> earthquakes) throws IOException {
+        int count = earthquakes.size();
+        File temp = new File(file.getPath() + ".tmp");
+        File poolTemp = new File(file.getPath() + ".pool.tmp");
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        try {
+            FileChannel channel = fileOut.getChannel();
+            // The records go after the header, which needs their checksum
+            channel.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(fileOut, crc)));
+            PoolWriter pool = new PoolWriter(poolTemp);
+            try {
+                for (int i = 0; i < count; i++) {
+                    Earthquake earthquake = earthquakes.get(i);
+                    out.writeDouble(earthquake.getMagnitude());
+                    out.writeLong(earthquake.getTimeInMillis());
+                    out.writeLong(earthquake.getUpdated());
+                    out.writeInt(earthquake.getTz());
+                    out.writeDouble(earthquake.getLatitude());
+                    out.writeDouble(earthquake.getLongitude());
+                    out.writeDouble(earthquake.getDepth());
+                    out.writeInt(pool.add(earthquake.getId()));
+                    out.writeInt(pool.addShared(earthquake.getPlace()));
+                    out.writeInt(pool.add(earthquake.getUrl()));
+                }
+                out.flush();
+            } finally {
+                pool.close();
+            }
+            // Append the pool behind the records
+            FileInputStream poolIn = new FileInputStream(poolTemp);
+            try {
+                FileChannel poolChannel = poolIn.getChannel();
+                long position = 0;
+                while (position < pool.length) {
+                    position += poolChannel.transferTo(position, pool.length - position, channel);
+                }
+            } finally {
+                poolIn.close();
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(count);
+            header.putInt(HEADER_SIZE + count * RECORD_SIZE);
+            header.putInt(pool.length);
+            header.putLong(crc.getValue());
+            header.putLong(pool.crc.getValue());
+            header.rewind();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+            poolTemp.delete();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace catalog snapshot " + file);
+        }
+    }
+
+    /**
+     * Check the string pool against its checksum, which {@link #open(File)} leaves out so the
+     * first rows don't wait for it. Until then, a corrupt pool decodes into wrong strings but
+     * never fails a read. Can be called on any thread.
+     * Throws an IOException if the pool is corrupt.
+     */
+    public void verifyPool() throws IOException {
+        if (checksum(buffer, poolOffset, buffer.limit()) != poolChecksum) {
+            throw new IOException("Corrupt catalog snapshot string pool");
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Magnitude of the event at the given position, read without decoding the row.
+     */
+    public double getMagnitude(int position) {
+        return buffer.getDouble(HEADER_SIZE + position * RECORD_SIZE);
+    }
+
+    /**
+     * Time of the event at the given position, read without decoding the row.
+     */
+    public long getTimeInMillis(int position) {
+        return buffer.getLong(HEADER_SIZE + position * RECORD_SIZE + 8);
+    }
+
+    /**
+     * Latitude of the event at the given position, read without decoding the row.
+     */
+    public double getLatitude(int position) {
+        return buffer.getDouble(HEADER_SIZE + position * RECORD_SIZE + 28);
+    }
+
+    /**
+     * Longitude of the event at the given position, read without decoding the row.
+     */
+    public double getLongitude(int position) {
+        return buffer.getDouble(HEADER_SIZE + position * RECORD_SIZE + 36);
+    }
+
+    /**
+     * Decode the {@link Earthquake} at the given position. Thread-confined, e.g. to the thread
+     * that loads the pages of a paged list.
+     */
+    public Earthquake get(int position) {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + count);
+        }
+        int slot = position % ROW_CACHE_SIZE;
+        if (rowCachePositions[slot] == position) {
+            EarthquakeMetrics.get().getSnapshotRowCache().hit();
+            return rowCache[slot];
+        }
+        EarthquakeMetrics.get().getSnapshotRowCache().miss();
+        int record = HEADER_SIZE + position * RECORD_SIZE;
+        Earthquake earthquake = new Earthquake(readString(buffer.getInt(record + 52)),
+                buffer.getDouble(record),
+                readString(buffer.getInt(record + 56)),
+                buffer.getLong(record + 8),
+                buffer.getLong(record + 16),
+                buffer.getInt(record + 24),
+                buffer.getDouble(record + 28),
+                buffer.getDouble(record + 36),
+                buffer.getDouble(record + 44),
+                readString(buffer.getInt(record + 60)));
+        rowCache[slot] = earthquake;
+        rowCachePositions[slot] = position;
+        return earthquake;
+    }
+
+    /**
+     * Return a read-only {@link List} view that decodes rows on access.
+     */
+    public List<Earthquake> asList() {
+        return new AbstractList<Earthquake>() {
+            @Override
+            public Earthquake get(int position) {
+                return CatalogSnapshot.this.get(position);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private String readString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        int start = poolOffset + offset;
+        int length = start <= buffer.limit() - 4 ? buffer.getInt(start) : -1;
+        if (length < 0 || length > buffer.limit() - start - 4) {
+            // Only a corrupt pool, which verifyPool() reports
+            return "";
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(start + 4);
+        source.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes the string pool to a file of its own while the records are written. Ids and urls
+     * are unique to an event and written as they come. Places repeat, so they are shared, but
+     * only the first MAX_SHARED_PLACES of them, which bounds what the writer holds in memory.
+     */
+    private static class PoolWriter {
+        final CRC32 crc = new CRC32();
+        int length;
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> places = new HashMap<>();
+
+        PoolWriter(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(new FileOutputStream(file), crc)));
+        }
+
+        /**
+         * Append the string and return its pool offset, or NO_STRING for null.
+         */
+        int add(String value) throws IOException {
+            if (value == null) {
+                return NO_STRING;
+            }
+            byte[] bytes = value.getBytes("UTF-8");
+            int offset = length;
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            length += 4 + bytes.length;
+            return offset;
+        }
+
+        /**
+         * Return the pool offset of the place, appending it unless it is shared already.
+         */
+        int addShared(String place) throws IOException {
+            Integer shared = place == null ? null : places.get(place);
+            if (shared != null) {
+                return shared;
+            }
+            int offset = add(place);
+            if (place != null && places.size() < MAX_SHARED_PLACES) {
+                places.put(place, offset);
+            }
+            return offset;
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int start, int end) {
+        CRC32 crc = new CRC32();
+        ByteBuffer source = buffer.duplicate();
+        source.position(start);
+        byte[] chunk = new byte[64 * 1024];
+        while (source.position() < end) {
+            int length = Math.min(chunk.length, end - source.position());
+            source.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.quakereport;
+
+/**
+ * A single event from the USGS feed. The raw values are kept as primitives so the list can be
+ * sorted, filtered and compared without re-parsing text; the strings shown in the list are
+ * produced on first use and cached.
+ */
+public class Earthquake {
+
+    private final String id;
+    private final double magnitude;
+    private final String place;
+    private final long timeInMillis;
+    private final long updated;
+    private final int tz;
+    private final double latitude;
+    private final double longitude;
+    private final double depth;
+    private final String url;
+
+    // Display strings, filled in lazily the first time a row is bound
+    private String formattedMagnitude;
+    private String distance;
+    private String location;
+    private String date;
+    private String time;
+
+    public Earthquake(String id, double magnitude, String place, long timeInMillis, long updated, int tz,
+                      double latitude, double longitude, double depth, String url) {
+        this.id = id;
+        this.magnitude = magnitude;
+        this.place = place;
+        this.timeInMillis = timeInMillis;
+        this.updated = updated;
+        this.tz = tz;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.depth = depth;
+        this.url = url;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getMagnitude() {
+        return magnitude;
+    }
+
+    public String getPlace() {
+        return place;
+    }
+
+    public long getTimeInMillis() {
+        return timeInMillis;
+    }
+
+    /**
+     * Time the event was last revised by USGS, in epoch millis.
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Timezone offset from UTC in minutes at the event epicenter.
+     */
+    public int getTz() {
+        return tz;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Depth of the event in kilometers.
+     */
+    public double getDepth() {
+        return depth;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getFormattedMagnitude() {
+        if (formattedMagnitude == null) {
+            formattedMagnitude = EarthquakeFormatter.get().formatMagnitude(magnitude);
+        }
+        return formattedMagnitude;
+    }
+
+    public String getDistance() {
+        if (distance == null) {
+            splitPlace();
+        }
+        return distance;
+    }
+
+    public String getLocation() {
+        if (location == null) {
+            splitPlace();
+        }
+        return location;
+    }
+
+    public String getDate() {
+        if (date == null) {
+            date = EarthquakeFormatter.get().formatDate(timeInMillis);
+        }
+        return date;
+    }
+
+    public String getTime() {
+        if (time == null) {
+            time = EarthquakeFormatter.get().formatTime(timeInMillis);
+        }
+        return time;
+    }
+
+    /**
+     * Split text if it has an offset, e.g. "88km N of" / "Yelizovo, Russia"
+     */
+    private void splitPlace() {
+        int split = EarthquakeFormatter.findPlaceSplit(place);
+        if (split >= 0) {
+            distance = place.substring(0, split);
+            location = place.substring(split + 1);
+        }
+        else {
+            distance = "";
+            location = place;
+        }
+    }
+}
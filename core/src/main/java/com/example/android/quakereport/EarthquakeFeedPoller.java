@@ -0,0 +1,159 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Keeps the catalog current from a USGS summary feed, which only holds the recent events.
+ * Each poll fetches the feed and diffs it against the catalog events in the same time span by
+ * event id and updated time, giving the events that are new or revised and the ones USGS has
+ * deleted. The interval adapts: it drops to MIN_INTERVAL_MILLIS while polls keep finding
+ * changes and doubles up to MAX_INTERVAL_MILLIS while they don't; failed polls back off up to
+ * MAX_BACKOFF_MILLIS. Scheduling is up to the caller, which asks for the next delay after each
+ * poll. The feed is behind {@link FeedSource}, so a fake feed can replay scripted deltas.
+ */
+public class EarthquakeFeedPoller {
+
+    /**
+     * Summary feed of the M2.5+ events of the past day, matching the minimum magnitude of the
+     * catalog. Unlike the catalog query it lists every event type, the parser drops the ones
+     * that aren't earthquakes.
+     */
+    public static final String USGS_FEED_URL =
+            "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/2.5_day.geojson";
+
+    /** The feed is regenerated about once a minute, polling faster gains nothing */
+    public static final long MIN_INTERVAL_MILLIS = 60 * 1000;
+    public static final long MAX_INTERVAL_MILLIS = 15 * 60 * 1000;
+    public static final long MAX_BACKOFF_MILLIS = 30 * 60 * 1000;
+
+    /**
+     * Source of the feed, e.g. {@link EarthquakeHttpClient} or a fake replaying scripted feeds.
+     */
+    public interface FeedSource {
+        /**
+         * Hand the events of the feed to the listener. Returns false, without handing any over,
+         * if the feed hasn't changed since the last fetch.
+         */
+        boolean fetch(QueryUtils.OnEarthquakeParsedListener listener) throws IOException;
+    }
+
+    /**
+     * Changes between the catalog and the feed.
+     */
+    public static class Delta {
+        private final List<Earthquake> upserts;
+        private final List<String> removedIds;
+        private final long since;
+
+        Delta(List<Earthquake> upserts, List<String> removedIds, long since) {
+            this.upserts = upserts;
+            this.removedIds = removedIds;
+            this.since = since;
+        }
+
+        /** Events that are new, or newer than their catalog version */
+        public List<Earthquake> getUpserts() {
+            return upserts;
+        }
+
+        /** Ids of catalog events that are no longer in the feed */
+        public List<String> getRemovedIds() {
+            return removedIds;
+        }
+
+        /** Time of the oldest event in the feed, the delta only covers events since then */
+        public long getSince() {
+            return since;
+        }
+
+        public boolean isEmpty() {
+            return upserts.isEmpty() && removedIds.isEmpty();
+        }
+    }
+
+    private final FeedSource source;
+    private long interval = MIN_INTERVAL_MILLIS;
+    private long backoff;
+
+    public EarthquakeFeedPoller(FeedSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Fetch the feed. Returns its events, in feed order, or null if the feed hasn't changed
+     * since the last fetch, so there is nothing to diff.
+     */
+    public List<Earthquake> fetch() throws IOException {
+        final ArrayList<Earthquake> feed = new ArrayList<>();
+        boolean modified = source.fetch(new QueryUtils.OnEarthquakeParsedListener() {
+            @Override
+            public void onEarthquakeParsed(Earthquake earthquake) {
+                if (earthquake.getId() != null) {
+                    feed.add(earthquake);
+                }
+            }
+        });
+        return modified ? feed : null;
+    }
+
+    /**
+     * Return the time of the oldest event in the feed, or Long.MAX_VALUE for an empty feed.
+     */
+    public static long oldestTime(List<Earthquake> feed) {
+        long oldest = Long.MAX_VALUE;
+        for (Earthquake earthquake : feed) {
+            oldest = Math.min(oldest, earthquake.getTimeInMillis());
+        }
+        return oldest;
+    }
+
+    /**
+     * Diff the feed against recent, the catalog events at or after {@link #oldestTime(List)} of
+     * the feed. Only events in that span can be told apart from ones that aged out of the feed,
+     * so removals are limited to it.
+     */
+    public static Delta diff(List<Earthquake> recent, List<Earthquake> feed) {
+        long since = oldestTime(feed);
+        HashMap<String, Long> known = new HashMap<>(recent.size() * 2);
+        for (Earthquake earthquake : recent) {
+            known.put(earthquake.getId(), earthquake.getUpdated());
+        }
+        ArrayList<Earthquake> upserts = new ArrayList<>();
+        HashSet<String> feedIds = new HashSet<>(feed.size() * 2);
+        for (Earthquake earthquake : feed) {
+            feedIds.add(earthquake.getId());
+            Long updated = known.get(earthquake.getId());
+            if (updated == null || earthquake.getUpdated() > updated) {
+                upserts.add(earthquake);
+            }
+        }
+        ArrayList<String> removedIds = new ArrayList<>();
+        for (Earthquake earthquake : recent) {
+            if (earthquake.getTimeInMillis() >= since && !feedIds.contains(earthquake.getId())) {
+                removedIds.add(earthquake.getId());
+            }
+        }
+        return new Delta(upserts, removedIds, since);
+    }
+
+    /**
+     * Record a successful poll and return the delay until the next one.
+     */
+    public long onPollSucceeded(boolean changed) {
+        backoff = 0;
+        interval = changed ? MIN_INTERVAL_MILLIS : Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+        return interval;
+    }
+
+    /**
+     * Record a failed poll and return the delay until the next attempt.
+     */
+    public long onPollFailed() {
+        backoff = backoff == 0 ? MIN_INTERVAL_MILLIS : Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        return backoff;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Turns the raw {@link Earthquake} values into the strings shown in the list.
+ * DecimalFormat and SimpleDateFormat are expensive to create and not thread-safe, so each thread
+ * gets its own reusable formatter through {@link #get()}. Dates are cached per calendar day,
+ * so all the events of one day share a single formatted string.
+ */
+public class EarthquakeFormatter {
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    /** Number of formatted days kept per formatter */
+    private static final int DAY_CACHE_SIZE = 64;
+
+    /** Magnitudes from -1.0 to 12.0 in steps of 0.1 are formatted once and reused */
+    private static final int MIN_CACHED_MAGNITUDE = -10;
+    private static final int MAX_CACHED_MAGNITUDE = 120;
+
+    private static final ThreadLocal<EarthquakeFormatter> FORMATTERS = new ThreadLocal<>();
+
+    private final Locale locale;
+    private final TimeZone timeZone;
+    private final DecimalFormat magnitudeFormatter;
+    private final SimpleDateFormat dateFormatter;
+    private final SimpleDateFormat timeFormatter;
+    private final Date scratchDate = new Date();
+
+    private final String[] magnitudes = new String[MAX_CACHED_MAGNITUDE - MIN_CACHED_MAGNITUDE + 1];
+    private final Map<Long, String> days = new LinkedHashMap<Long, String>(DAY_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > DAY_CACHE_SIZE;
+        }
+    };
+    private long lastDay = Long.MIN_VALUE;
+    private String lastDate;
+    private long lastMinute = Long.MIN_VALUE;
+    private String lastTime;
+
+    public EarthquakeFormatter(Locale locale, TimeZone timeZone) {
+        this.locale = locale;
+        this.timeZone = timeZone;
+        magnitudeFormatter = new DecimalFormat("0.0", DecimalFormatSymbols.getInstance(locale));
+        dateFormatter = new SimpleDateFormat("MMM d, yyyy", locale);
+        dateFormatter.setTimeZone(timeZone);
+        timeFormatter = new SimpleDateFormat("h:mm a", locale);
+        timeFormatter.setTimeZone(timeZone);
+    }
+
+    /**
+     * Return the formatter of the calling thread for the device's current locale and time zone.
+     * A new one is created if either has changed since the last call.
+     */
+    public static EarthquakeFormatter get() {
+        Locale locale = Locale.getDefault();
+        TimeZone timeZone = TimeZone.getDefault();
+        EarthquakeFormatter formatter = FORMATTERS.get();
+        if (formatter == null || !formatter.locale.equals(locale) || !formatter.timeZone.equals(timeZone)) {
+            formatter = new EarthquakeFormatter(locale, timeZone);
+            FORMATTERS.set(formatter);
+        }
+        return formatter;
+    }
+
+    /**
+     * Format a magnitude with one decimal, e.g. "7.2".
+     */
+    public String formatMagnitude(double magnitude) {
+        double scaled = magnitude * 10;
+        if (scaled == Math.rint(scaled) && scaled >= MIN_CACHED_MAGNITUDE && scaled <= MAX_CACHED_MAGNITUDE) {
+            int index = (int) scaled - MIN_CACHED_MAGNITUDE;
+            if (magnitudes[index] == null) {
+                magnitudes[index] = magnitudeFormatter.format(magnitude);
+            }
+            return magnitudes[index];
+        }
+        return magnitudeFormatter.format(magnitude);
+    }
+
+    /**
+     * Format the calendar day of the given time, e.g. "Jan 30, 2016".
+     */
+    public String formatDate(long timeInMillis) {
+        long day = floorDiv(timeInMillis + timeZone.getOffset(timeInMillis), MILLIS_PER_DAY);
+        // Catalogs are ordered by time, so most lookups hit the same day as the previous one
+        if (day != lastDay) {
+            String date = days.get(day);
+            if (date == null) {
+                scratchDate.setTime(timeInMillis);
+                date = dateFormatter.format(scratchDate);
+                days.put(day, date);
+            }
+            lastDay = day;
+            lastDate = date;
+        }
+        return lastDate;
+    }
+
+    /**
+     * Format the time of day of the given time, e.g. "3:25 AM".
+     */
+    public String formatTime(long timeInMillis) {
+        long minute = floorDiv(timeInMillis + timeZone.getOffset(timeInMillis), MILLIS_PER_MINUTE);
+        if (minute != lastMinute) {
+            scratchDate.setTime(timeInMillis);
+            lastTime = timeFormatter.format(scratchDate);
+            lastMinute = minute;
+        }
+        return lastTime;
+    }
+
+    /**
+     * Return where a USGS place like "88km N of Yelizovo, Russia" splits into its distance part
+     * ("88km N of") and its location part ("Yelizovo, Russia"): the index just past "of",
+     * or -1 if the place is only a location, e.g. "Pacific-Antarctic Ridge" or "Gulf of California".
+     */
+    public static int findPlaceSplit(String place) {
+        // Only an offset starts with a digit, this keeps "Gulf of ..." and "offshore ..." whole
+        if (place.isEmpty() || !Character.isDigit(place.charAt(0))) {
+            return -1;
+        }
+        int index = place.indexOf(" of ");
+        return index < 0 ? -1 : index + 3;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
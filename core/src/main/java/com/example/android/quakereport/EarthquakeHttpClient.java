@@ -0,0 +1,250 @@
+package com.example.android.quakereport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fetches a USGS GeoJSON response and streams the body straight into
+ * {@link QueryUtils#parseEarthquakes(InputStream, QueryUtils.OnEarthquakeParsedListener)}.
+ * Responses are requested gzip compressed and kept in a {@link ResponseDiskCache}; the next
+ * fetch of the same url is a conditional request, and a 304 is answered from the cached body
+ * without downloading it again, or not parsed at all by {@link #fetchIfModified}. Failed
+ * attempts are retried with exponential backoff, and if the server can't be reached at all the
+ * cached body (if any) is used instead.
+ */
+public class EarthquakeHttpClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    private final ResponseDiskCache cache;
+    private final int readTimeoutMillis;
+    private final long initialBackoffMillis;
+
+    public EarthquakeHttpClient(ResponseDiskCache cache) {
+        this(cache, READ_TIMEOUT_MILLIS, INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Client with its own read timeout and first retry delay, so tests don't wait for real ones.
+     */
+    EarthquakeHttpClient(ResponseDiskCache cache, int readTimeoutMillis, long initialBackoffMillis) {
+        this.cache = cache;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Fetch the url and hand each parsed {@link Earthquake} to the listener. A 304, or a server
+     * that can't be reached, is answered from the cached body.
+     */
+    public void fetch(String url, QueryUtils.OnEarthquakeParsedListener listener) throws IOException {
+        fetch(url, listener, true);
+    }
+
+    /**
+     * Fetch the url only if it changed since the cached response, handing each parsed
+     * {@link Earthquake} to the listener. Returns false, without parsing anything, when the
+     * server answers 304, for callers that already applied the cached response. A server that
+     * can't be reached is an IOException rather than the stale cached response, e.g. when
+     * diffing a live feed.
+     */
+    public boolean fetchIfModified(String url, QueryUtils.OnEarthquakeParsedListener listener)
+            throws IOException {
+        return fetch(url, listener, false);
+    }
+
+    private boolean fetch(String url, QueryUtils.OnEarthquakeParsedListener listener, boolean useCache)
+            throws IOException {
+        DeliveryTracker tracker = new DeliveryTracker(listener);
+        long backoff = initialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fetchOnce(url, tracker, useCache);
+            } catch (IOException e) {
+                // A timed out read is retried like any other failure, only a cancel isn't
+                if (isCancelled(e)) {
+                    throw e;
+                }
+                // Once events were handed out a retry would deliver them twice
+                if (tracker.delivered) {
+                    throw e;
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    ResponseDiskCache.Entry entry = useCache ? cache.get(url) : null;
+                    if (entry == null) {
+                        throw e;
+                    }
+                    // Offline: a stale catalog is better than none
+                    EarthquakeMetrics.get().getResponseCache().hit();
+                    parse(entry.openBody(), entry.isGzip(), tracker);
+                    return true;
+                }
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                // Keep the flag set so the caller can tell this from a timeout
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Fetch was cancelled");
+            }
+            backoff *= 2;
+        }
+    }
+
+    /**
+     * Return whether a fetch failed because its thread was interrupted. A
+     * {@link java.net.SocketTimeoutException} is an InterruptedIOException as well, but it is a
+     * failure like any other, not a cancel.
+     */
+    public static boolean isCancelled(IOException e) {
+        return e instanceof InterruptedIOException && Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Make one request. Returns false if the response is unchanged and parseNotModified isn't
+     * set, otherwise the fresh or cached body has been parsed.
+     */
+    private boolean fetchOnce(String url, QueryUtils.OnEarthquakeParsedListener listener,
+                              boolean parseNotModified) throws IOException {
+        ResponseDiskCache.Entry entry = cache.get(url);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(readTimeoutMillis);
+            // Asking explicitly means we get the compressed bytes and can cache them as they are
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (entry != null) {
+                if (entry.getEtag() != null) {
+                    connection.setRequestProperty("If-None-Match", entry.getEtag());
+                }
+                if (entry.getLastModified() != null) {
+                    connection.setRequestProperty("If-Modified-Since", entry.getLastModified());
+                }
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                EarthquakeMetrics.get().getResponseCache().hit();
+                if (!parseNotModified) {
+                    return false;
+                }
+                parse(entry.openBody(), entry.isGzip(), listener);
+                return true;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Error response code " + responseCode + " for " + url);
+            }
+            EarthquakeMetrics.get().getResponseCache().miss();
+
+            boolean gzip = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+            ResponseDiskCache.Editor editor = cache.edit(url);
+            try {
+                CachingInputStream body = new CachingInputStream(connection.getInputStream(),
+                        editor.getOutputStream());
+                parse(body, gzip, listener);
+                // The parser stops at the closing brace, the cached copy needs the rest too
+                // (e.g. the gzip trailer)
+                body.drain();
+            } catch (IOException | RuntimeException e) {
+                editor.abort();
+                throw e;
+            }
+            editor.commit(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), gzip);
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void parse(InputStream in, boolean gzip, QueryUtils.OnEarthquakeParsedListener listener)
+            throws IOException {
+        if (gzip) {
+            in = new GZIPInputStream(in);
+        }
+        QueryUtils.parseEarthquakes(in, listener);
+    }
+
+    /**
+     * Remembers whether any earthquake has been handed to the listener yet.
+     */
+    private static class DeliveryTracker implements QueryUtils.OnEarthquakeParsedListener {
+        private final QueryUtils.OnEarthquakeParsedListener listener;
+        private boolean delivered;
+
+        DeliveryTracker(QueryUtils.OnEarthquakeParsedListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onEarthquakeParsed(Earthquake earthquake) {
+            delivered = true;
+            listener.onEarthquakeParsed(earthquake);
+        }
+    }
+
+    /**
+     * Copies everything read from the network into the cache as it goes past, so the body is
+     * only read once. Closing it is left to {@link #drain()}, after the parser is done with it.
+     */
+    private static class CachingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        CachingInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Route through read() so skipped bytes are cached too
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public void close() {
+            // The parser closes its reader when done; keep the stream open for drain()
+        }
+
+        /**
+         * Read (and copy) whatever is left of the body, then close the stream.
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Copied by read()
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Applies what a poll of the live feed changed to the store and to the list shown, the whole
+ * catalog newest first. The events since the oldest feed event are the top rows of that list
+ * and nothing below them changes, so instead of reloading the list, the new top rows are put in
+ * front of the unchanged ones with a {@link PatchedList}, and the query engine is patched along.
+ * Holds the list last delivered and its engine. Not thread-safe, use it from the thread the
+ * store is used on.
+ */
+public class EarthquakeListPatcher {
+
+    /** Rows polls may put in front of the list before it is reloaded from the store */
+    public static final int MAX_PATCHED_ROWS = 1000;
+
+    /**
+     * The catalog the changes are written to, e.g. the local SQLite copy, in the order of the
+     * list.
+     */
+    public interface Store {
+        /** Return the events at or after the time, newest first: the top rows of the list */
+        List<Earthquake> querySince(long timeInMillis);
+
+        long count();
+
+        /** Write the new and revised events of the delta and delete the removed ones */
+        void apply(EarthquakeFeedPoller.Delta delta);
+    }
+
+    /**
+     * What a poll changed, see {@link #apply(List)}.
+     */
+    public static class Update {
+        private final List<Earthquake> before;
+        private final List<Earthquake> after;
+        private final List<Earthquake> list;
+        private final EarthquakeQueryEngine engine;
+
+        Update(List<Earthquake> before, List<Earthquake> after, List<Earthquake> list,
+               EarthquakeQueryEngine engine) {
+            this.before = before;
+            this.after = after;
+            this.list = list;
+            this.engine = engine;
+        }
+
+        /**
+         * The top rows of the list before the poll, or null if more than the top rows changed,
+         * e.g. a revision moved an event into the span of the feed. Then the list has to be
+         * reloaded from the store and replaced without a diff.
+         */
+        public List<Earthquake> getBefore() {
+            return before;
+        }
+
+        /** The top rows that replace {@link #getBefore()}, null along with it */
+        public List<Earthquake> getAfter() {
+            return after;
+        }
+
+        /**
+         * The patched list, or null if it has to be reloaded from the store, e.g. because polls
+         * put too many rows in front of it. {@link #getBefore()} and {@link #getAfter()} still
+         * describe the change then, if they are set.
+         */
+        public List<Earthquake> getList() {
+            return list;
+        }
+
+        /** The query engine over the patched list, null along with it */
+        public EarthquakeQueryEngine getEngine() {
+            return engine;
+        }
+    }
+
+    private final Store store;
+    private List<Earthquake> list;
+    private EarthquakeQueryEngine engine;
+
+    public EarthquakeListPatcher(Store store, List<Earthquake> list, EarthquakeQueryEngine engine) {
+        this.store = store;
+        setList(list, engine);
+    }
+
+    /**
+     * Set the list last delivered, with its query engine or with null until it is built.
+     */
+    public void setList(List<Earthquake> list, EarthquakeQueryEngine engine) {
+        this.list = list;
+        this.engine = engine;
+    }
+
+    /**
+     * Set the query engine built for list, unless it has been replaced since.
+     */
+    public void setEngine(List<Earthquake> list, EarthquakeQueryEngine engine) {
+        if (this.list == list) {
+            this.engine = engine;
+        }
+    }
+
+    public List<Earthquake> getList() {
+        return list;
+    }
+
+    /**
+     * Diff the feed against the store and write the changes to it. Returns null if nothing
+     * changed. Otherwise the list is patched, unless the returned update says it has to be
+     * reloaded; the caller sets the reloaded list with {@link #setList}.
+     */
+    public Update apply(List<Earthquake> feed) {
+        long since = EarthquakeFeedPoller.oldestTime(feed);
+        List<Earthquake> before = store.querySince(since);
+        EarthquakeFeedPoller.Delta delta = EarthquakeFeedPoller.diff(before, feed);
+        if (delta.isEmpty()) {
+            return null;
+        }
+        long countBefore = store.count();
+        store.apply(delta);
+        // Unless a revision moved an event across the line of the oldest feed event, only the
+        // top rows changed. Then the counts don't add up and the list is replaced.
+        List<Earthquake> after = store.querySince(since);
+        if (list.size() != countBefore
+                || store.count() - countBefore != after.size() - before.size()) {
+            return new Update(null, null, null, null);
+        }
+        PatchedList patched = PatchedList.of(list, before.size(), after);
+        if (patched.head.size() > MAX_PATCHED_ROWS || engine == null) {
+            // A reload folds the patches in
+            return new Update(before, after, null, null);
+        }
+        setList(patched, engine.patch(patched, before.size(), after));
+        return new Update(before, after, list, engine);
+    }
+
+    /**
+     * Read-only view of the first rows of a list that is only ever appended to, so growing a
+     * delivered list doesn't copy it and lists handed out before never change.
+     */
+    public static class Prefix extends AbstractList<Earthquake> implements RandomAccess {
+        private final List<Earthquake> list;
+        private final int size;
+
+        public Prefix(List<Earthquake> list, int size) {
+            this.list = list;
+            this.size = size;
+        }
+
+        @Override
+        public Earthquake get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+            }
+            return list.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Read-only list of new head rows followed by the rows of a base list from baseOffset on,
+     * e.g. the rows a poll revised in front of the unchanged rows of a snapshot list. Patching
+     * it again keeps the same base, so lookups stay one level deep.
+     */
+    public static class PatchedList extends AbstractList<Earthquake> implements RandomAccess {
+        private final List<Earthquake> head;
+        private final List<Earthquake> base;
+        private final int baseOffset;
+
+        private PatchedList(List<Earthquake> head, List<Earthquake> base, int baseOffset) {
+            this.head = head;
+            this.base = base;
+            this.baseOffset = baseOffset;
+        }
+
+        /**
+         * Return the list with its first removed rows replaced by head.
+         */
+        public static PatchedList of(List<Earthquake> list, int removed, List<Earthquake> head) {
+            if (!(list instanceof PatchedList)) {
+                return new PatchedList(head, list, removed);
+            }
+            PatchedList patched = (PatchedList) list;
+            if (removed >= patched.head.size()) {
+                return new PatchedList(head, patched.base, patched.baseOffset + removed - patched.head.size());
+            }
+            // Part of the earlier head stays, behind the new one
+            ArrayList<Earthquake> rows = new ArrayList<>(head.size() + patched.head.size() - removed);
+            rows.addAll(head);
+            rows.addAll(patched.head.subList(removed, patched.head.size()));
+            return new PatchedList(rows, patched.base, patched.baseOffset);
+        }
+
+        public List<Earthquake> getBase() {
+            return base;
+        }
+
+        /** Position in the base list of the first base row shown */
+        public int getBaseOffset() {
+            return baseOffset;
+        }
+
+        /**
+         * Return the position in this list of a position of the base list, at or after baseOffset.
+         */
+        public int toPosition(int basePosition) {
+            return head.size() + basePosition - baseOffset;
+        }
+
+        @Override
+        public Earthquake get(int index) {
+            if (index < head.size()) {
+                return head.get(index);
+            }
+            return base.get(baseOffset + index - head.size());
+        }
+
+        @Override
+        public int size() {
+            return head.size() + base.size() - baseOffset;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.android.quakereport;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide performance counters: load latency, parse time per feature and throughput,
+ * cache hit rates and adapter bind time. Recording is an uncontended lock or an atomic add, cheap
+ * enough to leave on in release builds, so regressions show up in the field. Query the getters,
+ * or log {@link #toString()} for a dump of everything.
+ */
+public class EarthquakeMetrics {
+
+    private static final EarthquakeMetrics INSTANCE = new EarthquakeMetrics();
+
+    /**
+     * Return the metrics of this process.
+     */
+    public static EarthquakeMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Count, total and maximum duration of one kind of operation.
+     */
+    public static class Timer {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        public synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /** Average duration in milliseconds, 0 if nothing was recorded */
+        public synchronized double getAverageMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        synchronized void reset() {
+            count = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US, "%d x avg %.3f ms, max %.3f ms",
+                    count, getAverageMillis(), maxNanos / 1e6);
+        }
+    }
+
+    /**
+     * Hits and misses of a cache.
+     */
+    public static class HitRate {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        public void hit() {
+            hits.incrementAndGet();
+        }
+
+        public void miss() {
+            misses.incrementAndGet();
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /** Share of lookups that were hits, 0 if there were none */
+        public double getRatio() {
+            long hits = this.hits.get();
+            long total = hits + misses.get();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        void reset() {
+            hits.set(0);
+            misses.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f%% of %d", getRatio() * 100, getHits() + getMisses());
+        }
+    }
+
+    /** From the start of a load until the list first has something to show */
+    private final Timer loadLatency = new Timer();
+
+    /** One parsed response each, see {@link #recordParse(int, long)} */
+    private final Timer parse = new Timer();
+    private final AtomicLong parsedFeatures = new AtomicLong();
+
+    private final Timer bind = new Timer();
+
+    /** Responses answered from the disk cache (304 or offline) over ones downloaded */
+    private final HitRate responseCache = new HitRate();
+
+    /** Rows served from the decoded row cache of a {@link CatalogSnapshot} */
+    private final HitRate snapshotRowCache = new HitRate();
+
+    /** Rows of a paged list whose page was loaded when they were bound */
+    private final HitRate pageCache = new HitRate();
+
+    public Timer getLoadLatency() {
+        return loadLatency;
+    }
+
+    public Timer getParse() {
+        return parse;
+    }
+
+    public Timer getBind() {
+        return bind;
+    }
+
+    public HitRate getResponseCache() {
+        return responseCache;
+    }
+
+    public HitRate getSnapshotRowCache() {
+        return snapshotRowCache;
+    }
+
+    public HitRate getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Record a parsed response. The time leaves out the listener but includes waiting on the
+     * stream, so for a download it can be bounded by the network rather than the parser.
+     */
+    public void recordParse(int features, long nanos) {
+        parse.record(nanos);
+        parsedFeatures.addAndGet(features);
+    }
+
+    public long getParsedFeatures() {
+        return parsedFeatures.get();
+    }
+
+    /** Average parse time per feature in microseconds, 0 if nothing was parsed */
+    public double getParseMicrosPerFeature() {
+        long features = parsedFeatures.get();
+        return features == 0 ? 0 : parse.getTotalNanos() / 1e3 / features;
+    }
+
+    /** Parsed features per second of parse time, 0 if nothing was parsed */
+    public double getFeaturesPerSecond() {
+        long nanos = parse.getTotalNanos();
+        return nanos == 0 ? 0 : parsedFeatures.get() * 1e9 / nanos;
+    }
+
+    public void reset() {
+        loadLatency.reset();
+        parse.reset();
+        parsedFeatures.set(0);
+        bind.reset();
+        responseCache.reset();
+        snapshotRowCache.reset();
+        pageCache.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "load latency: " + loadLatency
+                + "\nparse: " + parse + String.format(Locale.US, ", %d features, %.2f us/feature, %.0f features/s",
+                        getParsedFeatures(), getParseMicrosPerFeature(), getFeaturesPerSecond())
+                + "\nbind: " + bind
+                + "\nresponse cache hits: " + responseCache
+                + "\nsnapshot row cache hits: " + snapshotRowCache
+                + "\npage cache hits: " + pageCache;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Read-only list over a catalog that is loaded a page at a time. Only the pages around what the
+ * list binds are kept in memory: {@link #get(int)} returns null for a row that isn't loaded yet
+ * (the adapter binds a placeholder) and loads its page in the background, the page next to it
+ * is prefetched as the scroll position nears the edge of a page, and the least recently used
+ * pages are dropped once more than MAX_PAGES are held. Pages are kept in arrays indexed by page
+ * number, so binding a row never boxes or allocates. Only use it on the main thread, which loaded
+ * pages are handed back to through the mainThread executor. Before the list is handed out, the
+ * pages around a position can be loaded right away with {@link #preload(int)}.
+ */
+public class EarthquakePagedList extends AbstractList<Earthquake> {
+
+    /** Number of rows loaded at once */
+    private static final int PAGE_SIZE = 50;
+
+    /** Number of pages kept in memory, enough for a screen of rows scattered over pages */
+    private static final int MAX_PAGES = 40;
+
+    /**
+     * Loads a range of rows. Called on the loader thread.
+     */
+    public interface PageSource {
+        List<Earthquake> loadPage(int offset, int limit);
+    }
+
+    /**
+     * Called on the main thread when the rows [start, start + count) have been loaded.
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(int start, int count);
+    }
+
+    private final PageSource source;
+    private final int size;
+    private final Executor loader;
+    private final Executor mainThread;
+
+    /** Loaded pages by page number, null if not loaded */
+    private final List<Earthquake>[] pages;
+
+    /** When each page was last used, in ticks of {@link #useCount}; the smallest one is evicted */
+    private final long[] lastUsed;
+    private long useCount;
+
+    /** Numbers of the loaded pages, in no particular order */
+    private final int[] loaded = new int[MAX_PAGES];
+    private int loadedCount;
+
+    /** Pages that are being loaded */
+    private final boolean[] pending;
+
+    /** Position last asked for, written on the main thread and read as a hint on others */
+    private volatile int lastPosition;
+
+    private OnPageLoadedListener listener;
+
+    public EarthquakePagedList(PageSource source, int size, Executor loader, Executor mainThread) {
+        this.source = source;
+        this.size = size;
+        this.loader = loader;
+        this.mainThread = mainThread;
+        int pageCount = (size + PAGE_SIZE - 1) / PAGE_SIZE;
+        @SuppressWarnings("unchecked")
+        List<Earthquake>[] pages = (List<Earthquake>[]) new List[pageCount];
+        this.pages = pages;
+        lastUsed = new long[pageCount];
+        pending = new boolean[pageCount];
+    }
+
+    public PageSource getSource() {
+        return source;
+    }
+
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Return the earthquake at the given position, or null if its page isn't loaded yet.
+     */
+    @Override
+    public Earthquake get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+        }
+        lastPosition = position;
+        int page = position / PAGE_SIZE;
+        int offsetInPage = position % PAGE_SIZE;
+        // Prefetch in the direction the list is probably scrolling
+        if (offsetInPage >= PAGE_SIZE * 3 / 4) {
+            request(page + 1);
+        } else if (offsetInPage < PAGE_SIZE / 4) {
+            request(page - 1);
+        }
+        List<Earthquake> rows = pages[page];
+        if (rows == null) {
+            EarthquakeMetrics.get().getPageCache().miss();
+            request(page);
+            return null;
+        }
+        lastUsed[page] = ++useCount;
+        EarthquakeMetrics.get().getPageCache().hit();
+        return offsetInPage < rows.size() ? rows.get(offsetInPage) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the number of pages held in memory.
+     */
+    public int getLoadedPageCount() {
+        return loadedCount;
+    }
+
+    /**
+     * Return the position last asked for by {@link #get(int)} or {@link #preload(int)}, i.e.
+     * roughly where the list is scrolled to. Can be called on any thread.
+     */
+    public int getLastPosition() {
+        return lastPosition;
+    }
+
+    /**
+     * Load the page of position and the ones next to it on the calling thread, so the list has
+     * rows to show there as soon as it is handed out, e.g. where the list it replaces was
+     * scrolled to. Only call it before the list is handed to the main thread.
+     */
+    public void preload(int position) {
+        if (size == 0) {
+            return;
+        }
+        lastPosition = Math.max(0, Math.min(position, size - 1));
+        int page = lastPosition / PAGE_SIZE;
+        for (int i = Math.max(0, page - 1); i <= Math.min(pages.length - 1, page + 1); i++) {
+            if (pages[i] == null) {
+                int offset = i * PAGE_SIZE;
+                put(i, source.loadPage(offset, Math.min(PAGE_SIZE, size - offset)));
+            }
+        }
+    }
+
+    private void request(final int page) {
+        if (page < 0 || page >= pages.length || pages[page] != null || pending[page]) {
+            return;
+        }
+        pending[page] = true;
+        final int offset = page * PAGE_SIZE;
+        final int limit = Math.min(PAGE_SIZE, size - offset);
+        try {
+            loader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final List<Earthquake> rows = source.loadPage(offset, limit);
+                    mainThread.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            pending[page] = false;
+                            put(page, rows);
+                            if (listener != null) {
+                                listener.onPageLoaded(offset, rows.size());
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The loader has been shut down, nobody is showing this list any more
+            pending[page] = false;
+        }
+    }
+
+    /**
+     * Hold the rows of a page, in place of the least recently used page once MAX_PAGES are held.
+     */
+    private void put(int page, List<Earthquake> rows) {
+        if (loadedCount < MAX_PAGES) {
+            loaded[loadedCount++] = page;
+        } else {
+            int eldest = 0;
+            for (int i = 1; i < MAX_PAGES; i++) {
+                if (lastUsed[loaded[i]] < lastUsed[loaded[eldest]]) {
+                    eldest = i;
+                }
+            }
+            pages[loaded[eldest]] = null;
+            loaded[eldest] = page;
+        }
+        pages[page] = rows;
+        lastUsed[page] = ++useCount;
+    }
+}
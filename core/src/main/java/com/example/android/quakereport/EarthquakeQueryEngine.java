@@ -0,0 +1,286 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filters and sorts a catalog without touching the {@link Earthquake} objects. Time and
+ * magnitude are copied into primitive arrays once, and the list positions are kept sorted by
+ * time and by magnitude, so a time window or minimum magnitude is a binary search and the other
+ * filter is a scan over primitives. A result is a view that only materializes the earthquakes
+ * the list actually binds.
+ */
+public class EarthquakeQueryEngine {
+
+    /** Newest first */
+    public static final int SORT_BY_TIME = 0;
+
+    /** Strongest first, ties newest first */
+    public static final int SORT_BY_MAGNITUDE = 1;
+
+    /** Minimum magnitude that lets every event through */
+    public static final double NO_MINIMUM_MAGNITUDE = Double.NEGATIVE_INFINITY;
+
+    private final List<Earthquake> earthquakes;
+    private final long[] times;
+    private final double[] magnitudes;
+
+    /** Positions sorted newest first */
+    private final int[] byTime;
+
+    /** Positions sorted strongest first */
+    private final int[] byMagnitude;
+
+    public EarthquakeQueryEngine(List<Earthquake> earthquakes) {
+        this(earthquakes, new long[earthquakes.size()], new double[earthquakes.size()]);
+        for (int i = 0; i < times.length; i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            times[i] = earthquake.getTimeInMillis();
+            magnitudes[i] = earthquake.getMagnitude();
+        }
+        sortIndexes();
+    }
+
+    /**
+     * Build the engine straight from the snapshot records, without decoding any rows. The
+     * results are views over earthquakes, a list in the same order as the snapshot, e.g. a
+     * paged list over it.
+     */
+    public EarthquakeQueryEngine(List<Earthquake> earthquakes, CatalogSnapshot snapshot) {
+        this(earthquakes, new long[snapshot.size()], new double[snapshot.size()]);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = snapshot.getTimeInMillis(i);
+            magnitudes[i] = snapshot.getMagnitude(i);
+        }
+        sortIndexes();
+    }
+
+    private EarthquakeQueryEngine(List<Earthquake> earthquakes, long[] times, double[] magnitudes) {
+        this.earthquakes = earthquakes;
+        this.times = times;
+        this.magnitudes = magnitudes;
+        this.byTime = new int[times.length];
+        this.byMagnitude = new int[times.length];
+    }
+
+    /**
+     * Return an engine for earthquakes, a list made of head followed by the rows of this
+     * engine's list from position removed on, e.g. after a poll revised the newest rows. Only
+     * head is sorted, the kept positions are shifted and merged with it, so the cost is linear
+     * in the size of the list instead of a full sort.
+     */
+    public EarthquakeQueryEngine patch(List<Earthquake> earthquakes, int removed, List<Earthquake> head) {
+        if (removed > times.length) {
+            throw new IllegalArgumentException("removed " + removed + ", size " + times.length);
+        }
+        int headSize = head.size();
+        int kept = times.length - removed;
+        EarthquakeQueryEngine patched = new EarthquakeQueryEngine(earthquakes,
+                new long[headSize + kept], new double[headSize + kept]);
+        for (int i = 0; i < headSize; i++) {
+            Earthquake earthquake = head.get(i);
+            patched.times[i] = earthquake.getTimeInMillis();
+            patched.magnitudes[i] = earthquake.getMagnitude();
+        }
+        System.arraycopy(times, removed, patched.times, headSize, kept);
+        System.arraycopy(magnitudes, removed, patched.magnitudes, headSize, kept);
+
+        long[] magnitudeKeys = new long[patched.magnitudes.length];
+        for (int i = 0; i < magnitudeKeys.length; i++) {
+            magnitudeKeys[i] = sortableBits(patched.magnitudes[i]);
+        }
+        // The head alone is sorted the way sortIndexes() sorts everything
+        int[] headByTime = new int[headSize];
+        for (int i = 0; i < headSize; i++) {
+            headByTime[i] = i;
+        }
+        int[] scratch = new int[headSize];
+        sortDescending(headByTime, patched.times, scratch);
+        int[] headByMagnitude = headByTime.clone();
+        sortDescending(headByMagnitude, magnitudeKeys, scratch);
+
+        int shift = headSize - removed;
+        merge(headByTime, byTime, removed, shift, patched.byTime, patched.times, null);
+        merge(headByMagnitude, byMagnitude, removed, shift, patched.byMagnitude, magnitudeKeys, patched.times);
+        return patched;
+    }
+
+    /**
+     * Return the earthquakes of at least minMagnitude that happened in [fromTime, toTime],
+     * in the given sort order.
+     */
+    public List<Earthquake> query(double minMagnitude, long fromTime, long toTime, int sortOrder) {
+        int count = 0;
+        int[] positions;
+        if (sortOrder == SORT_BY_MAGNITUDE) {
+            // Strongest first, so the magnitude filter is a prefix
+            int end = countAtLeast(minMagnitude);
+            positions = new int[end];
+            for (int i = 0; i < end; i++) {
+                int position = byMagnitude[i];
+                if (times[position] >= fromTime && times[position] <= toTime) {
+                    positions[count++] = position;
+                }
+            }
+        } else {
+            // Newest first, so the time window is a contiguous range
+            int start = countNewerThan(toTime);
+            int end = countNotOlderThan(fromTime);
+            positions = new int[Math.max(0, end - start)];
+            for (int i = start; i < end; i++) {
+                int position = byTime[i];
+                if (magnitudes[position] >= minMagnitude) {
+                    positions[count++] = position;
+                }
+            }
+        }
+        final int[] selected = count == positions.length ? positions : Arrays.copyOf(positions, count);
+        return new AbstractList<Earthquake>() {
+            @Override
+            public Earthquake get(int index) {
+                return earthquakes.get(selected[index]);
+            }
+
+            @Override
+            public int size() {
+                return selected.length;
+            }
+        };
+    }
+
+    /**
+     * Number of leading byTime entries with a time after the given one.
+     */
+    private int countNewerThan(long time) {
+        int low = 0;
+        int high = byTime.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[byTime[middle]] > time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Number of leading byTime entries with a time at or after the given one.
+     */
+    private int countNotOlderThan(long time) {
+        int low = 0;
+        int high = byTime.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[byTime[middle]] >= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Number of leading byMagnitude entries with a magnitude of at least the given one.
+     */
+    private int countAtLeast(double magnitude) {
+        int low = 0;
+        int high = byMagnitude.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (magnitudes[byMagnitude[middle]] >= magnitude) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void sortIndexes() {
+        int size = times.length;
+        long[] magnitudeKeys = new long[size];
+        for (int i = 0; i < size; i++) {
+            byTime[i] = i;
+            byMagnitude[i] = i;
+            magnitudeKeys[i] = sortableBits(magnitudes[i]);
+        }
+        int[] scratch = new int[size];
+        // Sort by time first, the stable sort by magnitude then keeps equal magnitudes newest first
+        sortDescending(byTime, times, scratch);
+        System.arraycopy(byTime, 0, byMagnitude, 0, size);
+        sortDescending(byMagnitude, magnitudeKeys, scratch);
+    }
+
+    /**
+     * Map a double to a long that sorts the same way, so both indexes share one sort.
+     */
+    private static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Merge sorted head positions with the sorted positions of the old list, leaving out the
+     * ones before removed and shifting the rest. Ties on keys go by tieKeys, if any, then the
+     * head goes first, as the lower positions, which gives the order of a full stable sort.
+     */
+    private static void merge(int[] head, int[] positions, int removed, int shift, int[] into,
+                              long[] keys, long[] tieKeys) {
+        int next = 0;
+        int count = 0;
+        for (int position : positions) {
+            if (position < removed) {
+                continue;
+            }
+            position += shift;
+            while (next < head.length && comesFirst(head[next], position, keys, tieKeys)) {
+                into[count++] = head[next++];
+            }
+            into[count++] = position;
+        }
+        while (next < head.length) {
+            into[count++] = head[next++];
+        }
+    }
+
+    private static boolean comesFirst(int headPosition, int position, long[] keys, long[] tieKeys) {
+        if (keys[headPosition] != keys[position]) {
+            return keys[headPosition] > keys[position];
+        }
+        return tieKeys == null || tieKeys[headPosition] >= tieKeys[position];
+    }
+
+    /**
+     * Stable bottom-up merge sort of positions by descending key, without boxing.
+     */
+    private static void sortDescending(int[] positions, long[] keys, int[] scratch) {
+        int size = positions.length;
+        int[] from = positions;
+        int[] to = scratch;
+        for (int width = 1; width < size; width *= 2) {
+            for (int start = 0; start < size; start += 2 * width) {
+                int middle = Math.min(start + width, size);
+                int end = Math.min(start + 2 * width, size);
+                int left = start;
+                int right = middle;
+                for (int i = start; i < end; i++) {
+                    if (left < middle && (right >= end || keys[from[left]] >= keys[from[right]])) {
+                        to[i] = from[left++];
+                    } else {
+                        to[i] = from[right++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != positions) {
+            System.arraycopy(from, 0, positions, 0, size);
+        }
+    }
+}
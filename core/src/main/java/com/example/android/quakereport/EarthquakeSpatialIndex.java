@@ -0,0 +1,245 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Grid index over event coordinates for "within R km of a point" and bounding-box queries.
+ * The globe is split into 1 degree cells, each holding the list positions of the events inside
+ * it, so a query only looks at the cells it overlaps instead of scanning the whole catalog.
+ * Positions are added in list order; results are positions into the same list, in ascending
+ * order, so they keep the order of the list. All methods are synchronized, so an index can be
+ * filled on one thread and queried on another.
+ */
+public class EarthquakeSpatialIndex {
+
+    /** Mean earth radius used for great-circle distances */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private static final int CELL_SIZE_DEGREES = 1;
+    private static final int ROWS = 180 / CELL_SIZE_DEGREES;
+    private static final int COLUMNS = 360 / CELL_SIZE_DEGREES;
+
+    /** Positions per cell, cells[row * COLUMNS + column], created on first use */
+    private final int[][] cells = new int[ROWS * COLUMNS][];
+    private final int[] cellSizes = new int[ROWS * COLUMNS];
+
+    /** Coordinates by position, for the exact check on the cells at the edge of a query */
+    private double[] latitudes = new double[64];
+    private double[] longitudes = new double[64];
+    private int size;
+
+    /**
+     * Return the number of indexed events.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Index the event at the given list position. Each position is added once; when the list
+     * changes, build a new index.
+     */
+    public synchronized void add(int position, double latitude, double longitude) {
+        if (position >= latitudes.length) {
+            int capacity = Math.max(latitudes.length * 2, position + 1);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+        }
+        latitudes[position] = latitude;
+        longitudes[position] = longitude;
+        size = Math.max(size, position + 1);
+
+        int cell = row(latitude) * COLUMNS + column(longitude);
+        int[] positions = cells[cell];
+        if (positions == null) {
+            positions = new int[4];
+            cells[cell] = positions;
+        } else if (cellSizes[cell] == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            cells[cell] = positions;
+        }
+        positions[cellSizes[cell]++] = position;
+    }
+
+    /**
+     * Index every event of the list, by position.
+     */
+    public void addAll(List<Earthquake> earthquakes) {
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            add(i, earthquake.getLatitude(), earthquake.getLongitude());
+        }
+    }
+
+    /**
+     * Return the positions of the events within radiusKm of the point, by great-circle distance.
+     */
+    public synchronized int[] queryRadius(double latitude, double longitude, double radiusKm) {
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double south = latitude - Math.toDegrees(angularRadius);
+        double north = latitude + Math.toDegrees(angularRadius);
+        double west = -180;
+        double east = 180;
+        // Near a pole the circle spans every longitude
+        double widthRatio = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+        if (south > -90 && north < 90 && angularRadius < Math.PI / 2 && widthRatio < 1) {
+            double halfWidth = Math.toDegrees(Math.asin(widthRatio));
+            west = normalizeLongitude(longitude - halfWidth);
+            east = normalizeLongitude(longitude + halfWidth);
+        }
+        south = Math.max(south, -90);
+        north = Math.min(north, 90);
+
+        PositionCollector result = new PositionCollector();
+        collectCandidates(south, west, north, east, result);
+        int count = 0;
+        for (int i = 0; i < result.size; i++) {
+            int position = result.positions[i];
+            if (distanceKm(latitude, longitude, latitudes[position], longitudes[position]) <= radiusKm) {
+                result.positions[count++] = position;
+            }
+        }
+        result.size = count;
+        return result.toSortedArray();
+    }
+
+    /**
+     * Return the positions of the events inside the box. A box crossing the antimeridian has a
+     * west edge greater than its east edge, e.g. west 170 and east -170.
+     */
+    public synchronized int[] queryBox(double south, double west, double north, double east) {
+        PositionCollector result = new PositionCollector();
+        collectCandidates(south, west, north, east, result);
+        int count = 0;
+        for (int i = 0; i < result.size; i++) {
+            int position = result.positions[i];
+            if (inBox(latitudes[position], longitudes[position], south, west, north, east)) {
+                result.positions[count++] = position;
+            }
+        }
+        result.size = count;
+        return result.toSortedArray();
+    }
+
+    /**
+     * Return a read-only view of the list holding only the given positions, e.g. a query
+     * result, for handing to the adapter. Positions past the end of the list are left out.
+     */
+    public static List<Earthquake> select(final List<Earthquake> earthquakes, int[] positions) {
+        int count = 0;
+        while (count < positions.length && positions[count] < earthquakes.size()) {
+            count++;
+        }
+        final int[] selected = count == positions.length ? positions : Arrays.copyOf(positions, count);
+        return new AbstractList<Earthquake>() {
+            @Override
+            public Earthquake get(int index) {
+                return earthquakes.get(selected[index]);
+            }
+
+            @Override
+            public int size() {
+                return selected.length;
+            }
+        };
+    }
+
+    /**
+     * Great-circle distance in kilometers (haversine formula).
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Add the positions of every cell overlapping the box.
+     */
+    private void collectCandidates(double south, double west, double north, double east,
+                                   PositionCollector result) {
+        int firstRow = row(south);
+        int lastRow = row(north);
+        if (west <= east) {
+            collectCells(firstRow, lastRow, column(west), column(east), result);
+        } else {
+            // Crosses the antimeridian, split into the two sides
+            collectCells(firstRow, lastRow, column(west), COLUMNS - 1, result);
+            collectCells(firstRow, lastRow, 0, column(east), result);
+        }
+    }
+
+    private void collectCells(int firstRow, int lastRow, int firstColumn, int lastColumn,
+                              PositionCollector result) {
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * COLUMNS + column;
+                if (cells[cell] != null) {
+                    result.add(cells[cell], cellSizes[cell]);
+                }
+            }
+        }
+    }
+
+    private static boolean inBox(double latitude, double longitude,
+                                 double south, double west, double north, double east) {
+        if (latitude < south || latitude > north) {
+            return false;
+        }
+        if (west <= east) {
+            return longitude >= west && longitude <= east;
+        }
+        return longitude >= west || longitude <= east;
+    }
+
+    private static int row(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_SIZE_DEGREES);
+        return Math.max(0, Math.min(ROWS - 1, row));
+    }
+
+    private static int column(double longitude) {
+        int column = (int) Math.floor((normalizeLongitude(longitude) + 180) / CELL_SIZE_DEGREES);
+        return Math.max(0, Math.min(COLUMNS - 1, column));
+    }
+
+    /**
+     * Wrap a longitude into [-180, 180].
+     */
+    private static double normalizeLongitude(double longitude) {
+        if (longitude >= -180 && longitude <= 180) {
+            return longitude;
+        }
+        double wrapped = (longitude + 180) % 360;
+        if (wrapped < 0) {
+            wrapped += 360;
+        }
+        return wrapped - 180;
+    }
+
+    /**
+     * Growable int array for query results.
+     */
+    private static class PositionCollector {
+        int[] positions = new int[64];
+        int size;
+
+        void add(int[] source, int count) {
+            if (size + count > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, size + count));
+            }
+            System.arraycopy(source, 0, positions, size, count);
+            size += count;
+        }
+
+        int[] toSortedArray() {
+            int[] result = Arrays.copyOf(positions, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
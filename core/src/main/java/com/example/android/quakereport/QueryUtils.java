@@ -1,17 +1,31 @@
 package com.example.android.quakereport;
 
-import android.util.Log;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class QueryUtils {
+
+    /** Logger for parse errors, routed to logcat on Android */
+    private static final Logger LOGGER = Logger.getLogger(QueryUtils.class.getName());
+
+    /** URL to query the USGS dataset for the last 30 days of earthquakes of magnitude 2.5 and up */
+    public static final String USGS_REQUEST_URL =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmagnitude=2.5";
+
+    /** Event type of the features that are listed, as in the eventtype of {@link #USGS_REQUEST_URL} */
+    private static final String EVENT_TYPE_EARTHQUAKE = "earthquake";
+
     /**
      * Sample JSON response for a USGS query
      */
@@ -34,6 +48,14 @@ public class QueryUtils {
     private QueryUtils() {
     }
 
+    /**
+     * Callback used by {@link #parseEarthquakes(Reader, OnEarthquakeParsedListener)} to hand over
+     * each {@link Earthquake} as soon as its feature has been read from the stream.
+     */
+    public interface OnEarthquakeParsedListener {
+        void onEarthquakeParsed(Earthquake earthquake);
+    }
+
     /**
      * Return a list of {@link Earthquake} objects that has been built up from
      * parsing a JSON response.
@@ -41,82 +63,180 @@ public class QueryUtils {
     public static ArrayList<Earthquake> extractEarthquakes() {
 
         // Create an empty ArrayList that we can start adding earthquakes to
-        ArrayList<Earthquake> earthquakes = new ArrayList<>();
+        final ArrayList<Earthquake> earthquakes = new ArrayList<>();
 
-        // Try to parse the SAMPLE_JSON_RESPONSE. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
+        // Stream the SAMPLE_JSON_RESPONSE through the pull parser. If there's a problem with the
+        // way the JSON is formatted, an IOException (or IllegalStateException) will be thrown.
         // Catch the exception so the app doesn't crash, and print the error message to the logs.
         try {
-
-            // TODO: Parse the response given by the SAMPLE_JSON_RESPONSE string and
-            // build up a list of Earthquake objects with the corresponding data.
-            JSONObject jsonObj = new JSONObject(SAMPLE_JSON_RESPONSE);
-
-            // Getting JSON Array node
-            JSONArray earthquakeArray = jsonObj.getJSONArray("features");
-
-            // looping through All earthquakeArray
-            for (int i = 0; i < earthquakeArray.length(); i++) {
-                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
-                JSONObject propertiesObj = currentEarthquake.getJSONObject("properties");
-
-                double mag = propertiesObj.getDouble("mag");
-                DecimalFormat formatter = new DecimalFormat("0.0");
-                String magnitude = formatter.format(mag);
-
-                //split text if it contains "of"
-                String place = propertiesObj.getString("place");
-                String[] temp;
-                String distance;
-                String location;
-                if (place.contains("of")) {
-                    temp = place.split("(?<=of)");
-                    distance = temp[0];
-                    location = temp[1];
-                }
-                else {
-                    distance = "";
-                    location = place;
+            extractEarthquakes(new OnEarthquakeParsedListener() {
+                @Override
+                public void onEarthquakeParsed(Earthquake earthquake) {
+                    earthquakes.add(earthquake);
                 }
+            });
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.log(Level.SEVERE, "Problem parsing the earthquake JSON results", e);
+        }
 
-                //coverts the int into a proper date
-                long date = propertiesObj.getLong("time");
-                Date dateObject = new Date(date);
-                SimpleDateFormat dateFormatter = new SimpleDateFormat("MMM DD, yyyy");
-                String dateToDisplay = dateFormatter.format(dateObject);
-
-                //coverts the int into a proper date
-                long time = propertiesObj.getLong("time");
-                Date timeObject = new Date(time);
-                SimpleDateFormat timeFormatter = new SimpleDateFormat("h:mm a");
-                String timeToDisplay = timeFormatter.format(timeObject);
-
-                //get URL
-                String url = propertiesObj.getString("url");
-
-                earthquakes.add(new Earthquake(magnitude, distance, location, dateToDisplay, timeToDisplay, url));
-
-                //below is the another method to create earthquake object
-//                // tmp hash map for single contact
-//                HashMap<String, String> earthquake = new HashMap<>();
-//
-//                // adding each child node to HashMap key => value
-//                earthquake.put("mag", mag);
-//                earthquake.put("place", place);
-//                earthquake.put("time", time);
-//
-//                // adding contact to contact list
-//                earthquakeList.add(earthquake);
+        // Return the list of earthquakes
+        return earthquakes;
+    }
+
+    /**
+     * Stream the sample response through {@link #parseEarthquakes(Reader, OnEarthquakeParsedListener)},
+     * handing each {@link Earthquake} to the listener as it is parsed.
+     */
+    public static void extractEarthquakes(OnEarthquakeParsedListener listener) throws IOException {
+        parseEarthquakes(new StringReader(SAMPLE_JSON_RESPONSE), listener);
+    }
+
+    /**
+     * Parse a USGS GeoJSON response from the given {@link InputStream} (UTF-8),
+     * see {@link #parseEarthquakes(Reader, OnEarthquakeParsedListener)}.
+     */
+    public static void parseEarthquakes(InputStream in, OnEarthquakeParsedListener listener)
+            throws IOException {
+        parseEarthquakes(new InputStreamReader(in, "UTF-8"), listener);
+    }
+
+    /**
+     * Parse a USGS GeoJSON response one feature at a time. Unlike building a {@code JSONObject}
+     * tree, only the current feature is ever held in memory, and properties we don't display
+     * (ids, sources, types, detail, ...) are skipped without being allocated.
+     * The reader is closed once the response has been consumed.
+     * If the calling thread is interrupted the parse stops with an {@link InterruptedIOException}
+     * and the thread stays interrupted. A value that isn't the number it should be (e.g. a "mag"
+     * of "n/a") fails the parse with a {@link MalformedJsonException}, like any other bad JSON.
+     */
+    public static void parseEarthquakes(Reader in, OnEarthquakeParsedListener listener)
+            throws IOException {
+        JsonReader reader = new JsonReader(in);
+        long start = System.nanoTime();
+        int features = 0;
+        // Time spent in the listener (e.g. writing to the database) isn't parse time
+        long listenerNanos = 0;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("features")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        // Leave the flag set, callers use it to tell a cancel from a timeout
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Earthquake parsing was cancelled");
+                        }
+                        Earthquake earthquake = readFeature(reader);
+                        if (earthquake != null) {
+                            features++;
+                            long listenerStart = System.nanoTime();
+                            listener.onEarthquakeParsed(earthquake);
+                            listenerNanos += System.nanoTime() - listenerStart;
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    // "type", "metadata", "bbox" are not needed for the list
+                    reader.skipValue();
                 }
-            } catch(JSONException e){
-                // If an error is thrown when executing any of the above statements in the "try" block,
-                // catch the exception here, so the app doesn't crash. Print a log message
-                // with the message from the exception.
-                Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
             }
+            reader.endObject();
+        } catch (NumberFormatException e) {
+            // Callers handle broken responses as IOExceptions, not as a crash
+            throw new MalformedJsonException("Bad number at " + reader.getPath(), e);
+        } finally {
+            reader.close();
+            EarthquakeMetrics.get().recordParse(features, System.nanoTime() - start - listenerNanos);
+        }
+    }
 
-            // Return the list of earthquakes
-            return earthquakes;
+    /**
+     * Read a single element of the "features" array. Returns null when the feature
+     * has no properties to show, or isn't an earthquake (summary feeds also list quarry
+     * blasts, explosions, ...).
+     */
+    private static Earthquake readFeature(JsonReader reader) throws IOException {
+        String id = null;
+        boolean hasProperties = false;
+        String type = null;
+        double mag = 0;
+        String place = "";
+        long time = 0;
+        long updated = 0;
+        int tz = 0;
+        String url = "";
+        double longitude = 0;
+        double latitude = 0;
+        double depth = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (name.equals("id")) {
+                id = reader.nextString();
+            } else if (name.equals("properties")) {
+                hasProperties = true;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String property = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                    } else if (property.equals("mag")) {
+                        mag = reader.nextDouble();
+                    } else if (property.equals("place")) {
+                        place = reader.nextString();
+                    } else if (property.equals("time")) {
+                        time = reader.nextLong();
+                    } else if (property.equals("updated")) {
+                        updated = reader.nextLong();
+                    } else if (property.equals("tz")) {
+                        tz = reader.nextInt();
+                    } else if (property.equals("url")) {
+                        url = reader.nextString();
+                    } else if (property.equals("type")) {
+                        type = reader.nextString();
+                    } else {
+                        // ids, sources, types, detail, ... are never shown
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (name.equals("geometry")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("coordinates") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        // GeoJSON order is [longitude, latitude, depth]
+                        reader.beginArray();
+                        int index = 0;
+                        while (reader.hasNext()) {
+                            if (reader.peek() == JsonToken.NULL || index > 2) {
+                                reader.skipValue();
+                            } else if (index == 0) {
+                                longitude = reader.nextDouble();
+                            } else if (index == 1) {
+                                latitude = reader.nextDouble();
+                            } else {
+                                depth = reader.nextDouble();
+                            }
+                            index++;
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
+        if (!hasProperties || (type != null && !type.equals(EVENT_TYPE_EARTHQUAKE))) {
+            return null;
+        }
+        return new Earthquake(id, mag, place, time, updated, tz, latitude, longitude, depth, url);
     }
 }
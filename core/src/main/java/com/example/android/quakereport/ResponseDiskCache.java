@@ -0,0 +1,227 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+
+/**
+ * Size-bounded LRU cache of HTTP response bodies on disk, together with the validators
+ * (ETag / Last-Modified) needed to revalidate them with a conditional request.
+ * Each entry is a body file plus a small properties file; the body file's modification time
+ * doubles as the last access time, and the least recently used entries are deleted once the
+ * bodies add up to more than the size limit.
+ */
+public class ResponseDiskCache {
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_GZIP = "gzip";
+
+    private final File directory;
+    private final long maxSize;
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+        private final File body;
+        private final String etag;
+        private final String lastModified;
+        private final boolean gzip;
+
+        Entry(File body, String etag, String lastModified, boolean gzip) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.gzip = gzip;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Return true if the body is stored gzip compressed, as it came over the wire.
+         */
+        public boolean isGzip() {
+            return gzip;
+        }
+
+        public InputStream openBody() throws FileNotFoundException {
+            return new FileInputStream(body);
+        }
+    }
+
+    /**
+     * An entry being written. Nothing is visible to {@link #get(String)} until {@link #commit}.
+     */
+    public class Editor {
+        private final String key;
+        private final String url;
+        private final File temp;
+        private final OutputStream out;
+
+        Editor(String key, String url) throws IOException {
+            this.key = key;
+            this.url = url;
+            this.temp = new File(directory, key + TEMP_SUFFIX);
+            this.out = new BufferedOutputStream(new FileOutputStream(temp));
+        }
+
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        public void commit(String etag, String lastModified, boolean gzip) throws IOException {
+            out.close();
+            synchronized (ResponseDiskCache.this) {
+                File body = new File(directory, key + BODY_SUFFIX);
+                if (body.exists() && !body.delete() || !temp.renameTo(body)) {
+                    temp.delete();
+                    throw new IOException("Could not store cached response for " + url);
+                }
+                Properties meta = new Properties();
+                meta.setProperty(KEY_URL, url);
+                if (etag != null) {
+                    meta.setProperty(KEY_ETAG, etag);
+                }
+                if (lastModified != null) {
+                    meta.setProperty(KEY_LAST_MODIFIED, lastModified);
+                }
+                meta.setProperty(KEY_GZIP, String.valueOf(gzip));
+                OutputStream metaOut = new FileOutputStream(new File(directory, key + META_SUFFIX));
+                try {
+                    meta.store(metaOut, null);
+                } finally {
+                    metaOut.close();
+                }
+                body.setLastModified(System.currentTimeMillis());
+                trimToSize();
+            }
+        }
+
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The partial file is deleted anyway
+            }
+            temp.delete();
+        }
+    }
+
+    public ResponseDiskCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Return the cached response for the url, or null if there is none. A hit counts as an access.
+     */
+    public synchronized Entry get(String url) {
+        String key = keyFor(url);
+        File body = new File(directory, key + BODY_SUFFIX);
+        File metaFile = new File(directory, key + META_SUFFIX);
+        if (!body.exists() || !metaFile.exists()) {
+            return null;
+        }
+        Properties meta = new Properties();
+        try {
+            InputStream in = new FileInputStream(metaFile);
+            try {
+                meta.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        if (!url.equals(meta.getProperty(KEY_URL))) {
+            return null;
+        }
+        body.setLastModified(System.currentTimeMillis());
+        return new Entry(body, meta.getProperty(KEY_ETAG), meta.getProperty(KEY_LAST_MODIFIED),
+                Boolean.parseBoolean(meta.getProperty(KEY_GZIP)));
+    }
+
+    /**
+     * Start writing a new response for the url, replacing the current one once committed.
+     */
+    public Editor edit(String url) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+        return new Editor(keyFor(url), url);
+    }
+
+    /**
+     * Delete least recently used entries until the bodies fit in the size limit.
+     */
+    private void trimToSize() {
+        File[] bodies = directory.listFiles();
+        if (bodies == null) {
+            return;
+        }
+        long size = 0;
+        int count = 0;
+        for (File file : bodies) {
+            if (file.getName().endsWith(BODY_SUFFIX)) {
+                bodies[count++] = file;
+                size += file.length();
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        bodies = Arrays.copyOf(bodies, count);
+        Arrays.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long lhs = a.lastModified();
+                long rhs = b.lastModified();
+                return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < bodies.length && size > maxSize; i++) {
+            File body = bodies[i];
+            String name = body.getName();
+            String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+            size -= body.length();
+            body.delete();
+            new File(directory, key + META_SUFFIX).delete();
+        }
+    }
+
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.android.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CatalogSnapshotTest {
+
+    private static final int HEADER_SIZE = 40;
+    private static final int RECORD_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        List<Earthquake> earthquakes = Arrays.asList(
+                new Earthquake("us1", 4.5, "10km N of S\u00e1gua, Cuba", 2000, 2100, -300, 22.5, -80.1, 12.5,
+                        "https://example.com/us1"),
+                new Earthquake("us2", 2.1, null, 1000, 1000, 60, -33.9, 151.2, 3, null));
+        File file = folder.newFile("catalog.snapshot");
+
+        CatalogSnapshot.write(file, earthquakes);
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        snapshot.verifyPool();
+
+        assertEquals(2, snapshot.size());
+        Earthquake first = snapshot.get(0);
+        assertEquals("us1", first.getId());
+        assertEquals(4.5, first.getMagnitude(), 0);
+        assertEquals("10km N of S\u00e1gua, Cuba", first.getPlace());
+        assertEquals(2000, first.getTimeInMillis());
+        assertEquals(2100, first.getUpdated());
+        assertEquals(-300, first.getTz());
+        assertEquals(22.5, first.getLatitude(), 0);
+        assertEquals(-80.1, first.getLongitude(), 0);
+        assertEquals(12.5, first.getDepth(), 0);
+        assertEquals("https://example.com/us1", first.getUrl());
+        assertNull(snapshot.get(1).getPlace());
+        assertNull(snapshot.get(1).getUrl());
+    }
+
+    @Test
+    public void repeatedPlacesAreWrittenOnce() throws IOException {
+        File file = folder.newFile("catalog.snapshot");
+
+        CatalogSnapshot.write(file, Arrays.asList(event("a", "Alaska"), event("b", "Alaska"),
+                event("c", "Alaska")));
+
+        // Three ids, three empty urls and one place
+        assertEquals(HEADER_SIZE + 3 * RECORD_SIZE + 3 * 5 + 3 * 4 + 4 + 6, file.length());
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        snapshot.verifyPool();
+        assertEquals("c", snapshot.get(2).getId());
+        assertEquals("Alaska", snapshot.get(2).getPlace());
+        assertTrue(!new File(file.getPath() + ".pool.tmp").exists());
+    }
+
+    @Test
+    public void corruptRecordFailsOpen() throws IOException {
+        File file = write();
+        flipByte(file, HEADER_SIZE + RECORD_SIZE + 3);
+
+        try {
+            CatalogSnapshot.open(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Corrupt"));
+        }
+    }
+
+    @Test
+    public void corruptPoolFailsVerification() throws IOException {
+        File file = write();
+        // The length of the last, empty url, which now runs past the end of the pool
+        flipByte(file, file.length() - 1);
+
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        assertEquals("b", snapshot.get(1).getId());
+        assertEquals("", snapshot.get(1).getUrl());
+        try {
+            snapshot.verifyPool();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Corrupt"));
+        }
+    }
+
+    @Test
+    public void truncatedFileFailsOpen() throws IOException {
+        File file = write();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(file.length() - 1);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            CatalogSnapshot.open(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Truncated"));
+        }
+    }
+
+    private File write() throws IOException {
+        File file = folder.newFile("catalog.snapshot");
+        CatalogSnapshot.write(file, Arrays.asList(event("a", "Alaska"), event("b", "Chile")));
+        return file;
+    }
+
+    private static Earthquake event(String id, String place) {
+        return new Earthquake(id, 3, place, 10, 10, 0, 0, 0, 10, "");
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeFeedPollerTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    /**
+     * Replays scripted feeds, one per fetch; a null feed is a 304.
+     */
+    static class FakeFeedSource implements EarthquakeFeedPoller.FeedSource {
+        private final ArrayDeque<List<Earthquake>> feeds = new ArrayDeque<>();
+        int fetches;
+
+        FakeFeedSource then(Earthquake... feed) {
+            feeds.add(Arrays.asList(feed));
+            return this;
+        }
+
+        FakeFeedSource thenNotModified() {
+            feeds.add(Collections.<Earthquake>emptyList());
+            return this;
+        }
+
+        @Override
+        public boolean fetch(QueryUtils.OnEarthquakeParsedListener listener) throws IOException {
+            fetches++;
+            List<Earthquake> feed = feeds.poll();
+            if (feed == null) {
+                throw new IOException("No more scripted feeds");
+            }
+            if (feed.isEmpty()) {
+                return false;
+            }
+            for (Earthquake earthquake : feed) {
+                listener.onEarthquakeParsed(earthquake);
+            }
+            return true;
+        }
+    }
+
+    @Test
+    public void fetchKeepsFeedOrder() throws IOException {
+        EarthquakeFeedPoller poller = new EarthquakeFeedPoller(new FakeFeedSource()
+                .then(event("a", 30, 30), event(null, 20, 20), event("b", 10, 10)));
+
+        assertEquals(Arrays.asList("a", "b"), ids(poller.fetch()));
+    }
+
+    @Test
+    public void fetchReturnsNullWhenNotModified() throws IOException {
+        EarthquakeFeedPoller poller = new EarthquakeFeedPoller(new FakeFeedSource().thenNotModified());
+
+        assertNull(poller.fetch());
+    }
+
+    @Test
+    public void diffFindsNewRevisedAndRemovedEvents() {
+        List<Earthquake> recent = Arrays.asList(
+                event("kept", 40, 40), event("revised", 30, 30), event("deleted", 20, 20),
+                event("aged out", 5, 5));
+        List<Earthquake> feed = Arrays.asList(
+                event("new", 50, 50), event("kept", 40, 40), event("revised", 30, 35),
+                event("oldest", 10, 10));
+
+        EarthquakeFeedPoller.Delta delta = EarthquakeFeedPoller.diff(recent, feed);
+
+        assertEquals(Arrays.asList("new", "revised", "oldest"), ids(delta.getUpserts()));
+        assertEquals(Collections.singletonList("deleted"), delta.getRemovedIds());
+        assertEquals(10, delta.getSince());
+    }
+
+    @Test
+    public void diffIgnoresOlderRevisions() {
+        List<Earthquake> recent = Collections.singletonList(event("a", 10, 20));
+        List<Earthquake> feed = Collections.singletonList(event("a", 10, 15));
+
+        assertTrue(EarthquakeFeedPoller.diff(recent, feed).isEmpty());
+    }
+
+    @Test
+    public void emptyFeedRemovesNothing() {
+        List<Earthquake> recent = Collections.singletonList(event("a", 10, 10));
+
+        EarthquakeFeedPoller.Delta delta = EarthquakeFeedPoller.diff(recent, Collections.<Earthquake>emptyList());
+
+        assertTrue(delta.isEmpty());
+        assertEquals(Long.MAX_VALUE, delta.getSince());
+    }
+
+    @Test
+    public void intervalDoublesWhileNothingChanges() {
+        EarthquakeFeedPoller poller = new EarthquakeFeedPoller(new FakeFeedSource());
+
+        assertEquals(2 * MINUTE, poller.onPollSucceeded(false));
+        assertEquals(4 * MINUTE, poller.onPollSucceeded(false));
+        assertEquals(8 * MINUTE, poller.onPollSucceeded(false));
+        assertEquals(EarthquakeFeedPoller.MAX_INTERVAL_MILLIS, poller.onPollSucceeded(false));
+        assertEquals(EarthquakeFeedPoller.MAX_INTERVAL_MILLIS, poller.onPollSucceeded(false));
+        assertEquals(EarthquakeFeedPoller.MIN_INTERVAL_MILLIS, poller.onPollSucceeded(true));
+    }
+
+    @Test
+    public void failuresBackOff() {
+        EarthquakeFeedPoller poller = new EarthquakeFeedPoller(new FakeFeedSource());
+        poller.onPollSucceeded(false);
+
+        assertEquals(MINUTE, poller.onPollFailed());
+        assertEquals(2 * MINUTE, poller.onPollFailed());
+        for (int i = 0; i < 10; i++) {
+            poller.onPollFailed();
+        }
+        assertEquals(EarthquakeFeedPoller.MAX_BACKOFF_MILLIS, poller.onPollFailed());
+
+        // A success resets the backoff but keeps the interval it had reached
+        assertEquals(4 * MINUTE, poller.onPollSucceeded(false));
+        assertEquals(MINUTE, poller.onPollFailed());
+    }
+
+    static Earthquake event(String id, long time, long updated) {
+        return new Earthquake(id, 3, "Somewhere", time, updated, 0, 0, 0, 10, "");
+    }
+
+    static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthquakeFormatterTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone TOKYO = TimeZone.getTimeZone("Asia/Tokyo");
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+
+    /** Jan 30, 2016 3:25:12 AM UTC, the first event of the sample response */
+    private static final long YELIZOVO = 1454124312220L;
+
+    @Test
+    public void formatsMagnitudeWithOneDecimal() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(Locale.US, UTC);
+
+        assertEquals("7.2", formatter.formatMagnitude(7.2));
+        assertEquals("4.0", formatter.formatMagnitude(4));
+        assertEquals("-0.5", formatter.formatMagnitude(-0.5));
+        assertEquals("2.6", formatter.formatMagnitude(2.56));
+        assertEquals("13.0", formatter.formatMagnitude(13));
+    }
+
+    @Test
+    public void formatsMagnitudeWithLocaleSeparator() {
+        assertEquals("7,2", new EarthquakeFormatter(Locale.GERMANY, UTC).formatMagnitude(7.2));
+        assertEquals("7,2", new EarthquakeFormatter(Locale.FRANCE, UTC).formatMagnitude(7.2));
+        // Cached per formatter, a US formatter must not see the German string
+        assertEquals("7.2", new EarthquakeFormatter(Locale.US, UTC).formatMagnitude(7.2));
+    }
+
+    @Test
+    public void formatsDayOfMonthNotDayOfYear() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(Locale.US, UTC);
+
+        assertEquals("Dec 5, 2016", formatter.formatDate(utc(2016, Calendar.DECEMBER, 5, 12, 0)));
+        assertEquals("Mar 1, 2016", formatter.formatDate(utc(2016, Calendar.MARCH, 1, 0, 0)));
+    }
+
+    @Test
+    public void formatsDateInTimeZone() {
+        assertEquals("Jan 30, 2016", new EarthquakeFormatter(Locale.US, UTC).formatDate(YELIZOVO));
+        assertEquals("Jan 30, 2016", new EarthquakeFormatter(Locale.US, TOKYO).formatDate(YELIZOVO));
+        assertEquals("Jan 29, 2016", new EarthquakeFormatter(Locale.US, LOS_ANGELES).formatDate(YELIZOVO));
+    }
+
+    @Test
+    public void formatsTimeInTimeZone() {
+        assertEquals("3:25 AM", new EarthquakeFormatter(Locale.US, UTC).formatTime(YELIZOVO));
+        assertEquals("12:25 PM", new EarthquakeFormatter(Locale.US, TOKYO).formatTime(YELIZOVO));
+        assertEquals("7:25 PM", new EarthquakeFormatter(Locale.US, LOS_ANGELES).formatTime(YELIZOVO));
+    }
+
+    @Test
+    public void dayCacheFollowsTimeZoneMidnight() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(Locale.US, TOKYO);
+        long midnight = utc(2016, Calendar.JANUARY, 30, 15, 0);
+
+        assertEquals("Jan 30, 2016", formatter.formatDate(midnight - 1));
+        assertEquals("Jan 31, 2016", formatter.formatDate(midnight));
+        assertEquals("Jan 30, 2016", formatter.formatDate(midnight - 1));
+    }
+
+    @Test
+    public void timeCacheChangesEveryMinute() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(Locale.US, UTC);
+        long minute = utc(2016, Calendar.JANUARY, 30, 23, 59);
+
+        assertEquals("11:59 PM", formatter.formatTime(minute));
+        assertEquals("11:59 PM", formatter.formatTime(minute + 59999));
+        assertEquals("12:00 AM", formatter.formatTime(minute + 60000));
+    }
+
+    @Test
+    public void formatsTimesBeforeEpoch() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(Locale.US, UTC);
+        long time = utc(1906, Calendar.APRIL, 18, 13, 12);
+
+        assertEquals("Apr 18, 1906", formatter.formatDate(time));
+        assertEquals("1:12 PM", formatter.formatTime(time));
+    }
+
+    @Test
+    public void followsDeviceLocaleAndTimeZone() {
+        Locale locale = Locale.getDefault();
+        TimeZone timeZone = TimeZone.getDefault();
+        try {
+            Locale.setDefault(Locale.US);
+            TimeZone.setDefault(TOKYO);
+            assertEquals("12:25 PM", EarthquakeFormatter.get().formatTime(YELIZOVO));
+
+            TimeZone.setDefault(LOS_ANGELES);
+            assertEquals("7:25 PM", EarthquakeFormatter.get().formatTime(YELIZOVO));
+
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals("7,2", EarthquakeFormatter.get().formatMagnitude(7.2));
+        } finally {
+            Locale.setDefault(locale);
+            TimeZone.setDefault(timeZone);
+        }
+    }
+
+    @Test
+    public void splitsPlaceAfterOffset() {
+        String place = "88km N of Yelizovo, Russia";
+        int split = EarthquakeFormatter.findPlaceSplit(place);
+
+        assertEquals("88km N of", place.substring(0, split));
+        assertEquals(-1, EarthquakeFormatter.findPlaceSplit("Pacific-Antarctic Ridge"));
+        assertEquals(-1, EarthquakeFormatter.findPlaceSplit("Gulf of California"));
+        assertEquals(-1, EarthquakeFormatter.findPlaceSplit("offshore of Northern California"));
+        assertEquals(-1, EarthquakeFormatter.findPlaceSplit(""));
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        GregorianCalendar calendar = new GregorianCalendar(UTC, Locale.US);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
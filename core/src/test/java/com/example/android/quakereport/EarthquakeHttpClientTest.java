@@ -0,0 +1,354 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the client against a local server answering from a script, one response per request.
+ */
+public class EarthquakeHttpClientTest {
+
+    private static final int EVENTS = 50;
+    private static final byte[] BODY = SyntheticGeoJson.generate(EVENTS, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ConcurrentLinkedQueue<Response> script = new ConcurrentLinkedQueue<>();
+    private final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> ifModifiedSince = Collections.synchronizedList(new ArrayList<String>());
+    private final Semaphore requests = new Semaphore(0);
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ResponseDiskCache cache;
+    private String url;
+
+    private interface Response {
+        void send(HttpExchange exchange) throws IOException;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // Stalled responses must not hold up the next request
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ifModifiedSince.add(exchange.getRequestHeaders().getFirst("If-Modified-Since"));
+                ifNoneMatch.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                requests.release();
+                Response response = script.poll();
+                try {
+                    if (response == null) {
+                        exchange.sendResponseHeaders(500, -1);
+                    } else {
+                        response.send(exchange);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed.geojson";
+        cache = new ResponseDiskCache(folder.newFolder("cache"), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void parsesAndCachesGzipResponse() throws IOException {
+        script.add(ok("\"v1\""));
+
+        assertEquals(EVENTS, fetch(client()).size());
+
+        ResponseDiskCache.Entry entry = cache.get(url);
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getEtag());
+        assertTrue(entry.isGzip());
+        assertEquals(EVENTS, QueryUtilsTest.parse(new GZIPInputStream(entry.openBody())).size());
+    }
+
+    @Test
+    public void notModifiedParsesCachedBody() throws IOException {
+        script.add(ok("\"v1\""));
+        script.add(notModified());
+        EarthquakeHttpClient client = client();
+        fetch(client);
+
+        List<Earthquake> earthquakes = fetch(client);
+
+        assertEquals(EVENTS, earthquakes.size());
+        assertEquals("\"v1\"", ifNoneMatch.get(1));
+    }
+
+    @Test
+    public void revalidatesWithLastModified() throws IOException {
+        script.add(ok(null, "Sat, 30 Jan 2016 03:25:12 GMT"));
+        script.add(notModified());
+        EarthquakeHttpClient client = client();
+        fetch(client);
+
+        List<Earthquake> earthquakes = fetch(client);
+
+        assertEquals(EVENTS, earthquakes.size());
+        assertNull(ifModifiedSince.get(0));
+        assertEquals("Sat, 30 Jan 2016 03:25:12 GMT", ifModifiedSince.get(1));
+        assertNull(ifNoneMatch.get(1));
+    }
+
+    @Test
+    public void fetchIfModifiedSkipsNotModified() throws IOException {
+        script.add(ok("\"v1\""));
+        script.add(notModified());
+        EarthquakeHttpClient client = client();
+        fetch(client);
+
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        assertFalse(client.fetchIfModified(url, collector(earthquakes)));
+        assertTrue(earthquakes.isEmpty());
+    }
+
+    @Test
+    public void retriesServerError() throws IOException {
+        script.add(status(500));
+        script.add(ok("\"v1\""));
+
+        assertEquals(EVENTS, fetch(client()).size());
+        assertEquals(2, ifNoneMatch.size());
+    }
+
+    @Test
+    public void retriesReadTimeout() throws IOException {
+        script.add(stall(1000));
+        script.add(ok("\"v1\""));
+
+        assertEquals(EVENTS, fetch(client()).size());
+        assertEquals(2, ifNoneMatch.size());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void failsAfterLastAttempt() throws IOException {
+        try {
+            fetch(client());
+            fail();
+        } catch (IOException e) {
+            assertEquals(3, ifNoneMatch.size());
+        }
+    }
+
+    @Test
+    public void doesNotRetryOnceEventsWereDelivered() throws IOException {
+        script.add(truncated());
+        final List<Earthquake> earthquakes = new ArrayList<>();
+
+        try {
+            client().fetch(url, collector(earthquakes));
+            fail();
+        } catch (IOException e) {
+            assertFalse(earthquakes.isEmpty());
+            assertEquals(1, ifNoneMatch.size());
+            assertNull(cache.get(url));
+        }
+    }
+
+    @Test
+    public void offlineFetchFallsBackToCache() throws IOException {
+        script.add(ok("\"v1\""));
+        EarthquakeHttpClient client = client();
+        fetch(client);
+        server.stop(0);
+
+        assertEquals(EVENTS, fetch(client).size());
+        try {
+            client.fetchIfModified(url, collector(new ArrayList<Earthquake>()));
+            fail();
+        } catch (IOException e) {
+            assertFalse(EarthquakeHttpClient.isCancelled(e));
+        }
+    }
+
+    @Test
+    public void interruptedParseIsCancelled() {
+        script.add(ok("\"v1\""));
+        try {
+            client().fetch(url, new QueryUtils.OnEarthquakeParsedListener() {
+                @Override
+                public void onEarthquakeParsed(Earthquake earthquake) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertTrue(e instanceof InterruptedIOException);
+            assertTrue(EarthquakeHttpClient.isCancelled(e));
+            assertEquals(1, ifNoneMatch.size());
+            assertNull(cache.get(url));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void interruptedBackoffIsCancelled() throws InterruptedException {
+        final EarthquakeHttpClient client = new EarthquakeHttpClient(cache, 5000, 60000);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        final AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.fetch(url, collector(new ArrayList<Earthquake>()));
+                } catch (IOException e) {
+                    failure.set(e);
+                    interrupted.set(EarthquakeHttpClient.isCancelled(e));
+                }
+            }
+        });
+        thread.start();
+        assertTrue(requests.tryAcquire(5, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(failure.get() instanceof InterruptedIOException);
+        assertTrue(interrupted.get());
+        assertEquals(1, ifNoneMatch.size());
+    }
+
+    private EarthquakeHttpClient client() {
+        return new EarthquakeHttpClient(cache, 200, 1);
+    }
+
+    private List<Earthquake> fetch(EarthquakeHttpClient client) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        client.fetch(url, collector(earthquakes));
+        return earthquakes;
+    }
+
+    private static QueryUtils.OnEarthquakeParsedListener collector(final List<Earthquake> earthquakes) {
+        return new QueryUtils.OnEarthquakeParsedListener() {
+            @Override
+            public void onEarthquakeParsed(Earthquake earthquake) {
+                earthquakes.add(earthquake);
+            }
+        };
+    }
+
+    private static Response ok(String etag) {
+        return ok(etag, null);
+    }
+
+    /**
+     * Send the body with the validators that aren't null.
+     */
+    private static Response ok(final String etag, final String lastModified) {
+        return new Response() {
+            @Override
+            public void send(HttpExchange exchange) throws IOException {
+                byte[] body = gzip(BODY);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                if (etag != null) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+                if (lastModified != null) {
+                    exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        };
+    }
+
+    private static Response notModified() {
+        return status(304);
+    }
+
+    private static Response status(final int code) {
+        return new Response() {
+            @Override
+            public void send(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(code, -1);
+            }
+        };
+    }
+
+    /**
+     * Send nothing until the client's read timeout has passed.
+     */
+    private static Response stall(final long millis) {
+        return new Response() {
+            @Override
+            public void send(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(500, -1);
+            }
+        };
+    }
+
+    /**
+     * Send the first half of the body, enough for some events to be parsed, then end it.
+     */
+    private static Response truncated() {
+        return new Response() {
+            @Override
+            public void send(HttpExchange exchange) throws IOException {
+                byte[] body = gzip(BODY);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, 0);
+                exchange.getResponseBody().write(body, 0, body.length / 2);
+            }
+        };
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(buffer);
+        out.write(bytes);
+        out.close();
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.android.quakereport;
+
+import com.example.android.quakereport.EarthquakeFeedPollerTest.FakeFeedSource;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.example.android.quakereport.EarthquakeFeedPollerTest.event;
+import static com.example.android.quakereport.EarthquakeFeedPollerTest.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EarthquakeListPatcherTest {
+
+    /**
+     * The catalog in memory, newest first with ties broken by event id like the SQLite store.
+     */
+    private static class FakeStore implements EarthquakeListPatcher.Store {
+        private final ArrayList<Earthquake> rows = new ArrayList<>();
+
+        FakeStore(Earthquake... earthquakes) {
+            rows.addAll(Arrays.asList(earthquakes));
+            sort();
+        }
+
+        List<Earthquake> all() {
+            return new ArrayList<>(rows);
+        }
+
+        @Override
+        public List<Earthquake> querySince(long timeInMillis) {
+            List<Earthquake> since = new ArrayList<>();
+            for (Earthquake earthquake : rows) {
+                if (earthquake.getTimeInMillis() >= timeInMillis) {
+                    since.add(earthquake);
+                }
+            }
+            return since;
+        }
+
+        @Override
+        public long count() {
+            return rows.size();
+        }
+
+        @Override
+        public void apply(EarthquakeFeedPoller.Delta delta) {
+            List<String> replaced = new ArrayList<>(delta.getRemovedIds());
+            replaced.addAll(ids(delta.getUpserts()));
+            for (Iterator<Earthquake> it = rows.iterator(); it.hasNext(); ) {
+                if (replaced.contains(it.next().getId())) {
+                    it.remove();
+                }
+            }
+            rows.addAll(delta.getUpserts());
+            sort();
+        }
+
+        private void sort() {
+            Collections.sort(rows, new Comparator<Earthquake>() {
+                @Override
+                public int compare(Earthquake a, Earthquake b) {
+                    if (a.getTimeInMillis() != b.getTimeInMillis()) {
+                        return a.getTimeInMillis() > b.getTimeInMillis() ? -1 : 1;
+                    }
+                    return b.getId().compareTo(a.getId());
+                }
+            });
+        }
+    }
+
+    @Test
+    public void replayedFeedsKeepListInStepWithStore() throws IOException {
+        FakeFeedSource source = new FakeFeedSource()
+                .then(event("a", 30, 30), event("b", 20, 20), event("c", 10, 10))
+                .thenNotModified()
+                .then(event("d", 40, 40), event("a", 30, 31), event("c", 10, 10))
+                .then(event("e", 50, 50), event("d", 40, 45), event("a", 30, 31))
+                .then(event("e", 50, 50), event("d", 40, 45), event("a", 30, 31));
+        EarthquakeFeedPoller poller = new EarthquakeFeedPoller(source);
+        FakeStore store = new FakeStore(event("old", 1, 1));
+        List<Earthquake> initial = store.all();
+        EarthquakeListPatcher patcher = patcher(store, initial);
+        List<List<String>> changes = new ArrayList<>();
+
+        for (int poll = 0; poll < 5; poll++) {
+            List<Earthquake> feed = poller.fetch();
+            EarthquakeListPatcher.Update update = feed == null ? null : patcher.apply(feed);
+            if (update == null) {
+                changes.add(null);
+                continue;
+            }
+            changes.add(ids(update.getAfter()));
+            assertNotNull(update.getList());
+            assertSame(update.getList(), patcher.getList());
+            assertEquals(idsAndUpdates(store.querySince(EarthquakeFeedPoller.oldestTime(feed))),
+                    idsAndUpdates(update.getAfter()));
+            assertInStep(store, update);
+        }
+
+        // "b" deleted in the third feed, "c" aged out of the fourth one and is kept
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), null, Arrays.asList("d", "a", "c"),
+                Arrays.asList("e", "d", "a"), null), changes);
+        assertEquals(Arrays.asList("e", "d", "a", "c", "old"), ids(patcher.getList()));
+        assertEquals(45, patcher.getList().get(1).getUpdated());
+        // Patches stay one level deep over the list they started from
+        assertSame(initial, ((EarthquakeListPatcher.PatchedList) patcher.getList()).getBase());
+        assertEquals(5, source.fetches);
+    }
+
+    @Test
+    public void revisionIntoTheFeedSpanReplacesList() {
+        FakeStore store = new FakeStore(event("a", 30, 30), event("x", 5, 5), event("old", 1, 1));
+        List<Earthquake> list = store.all();
+        EarthquakeListPatcher patcher = patcher(store, list);
+
+        // The revision moved "x" from below the oldest feed event to above it
+        EarthquakeListPatcher.Update update = patcher.apply(Arrays.asList(
+                event("a", 30, 30), event("x", 20, 50)));
+
+        assertNull(update.getBefore());
+        assertNull(update.getList());
+        assertSame(list, patcher.getList());
+        assertEquals(Arrays.asList("a", "x", "old"), ids(store.all()));
+    }
+
+    @Test
+    public void listBehindStoreIsReplaced() {
+        FakeStore store = new FakeStore(event("a", 30, 30), event("old", 1, 1));
+        EarthquakeListPatcher patcher = patcher(store, Collections.singletonList(event("old", 1, 1)));
+
+        EarthquakeListPatcher.Update update = patcher.apply(Collections.singletonList(event("b", 40, 40)));
+
+        assertNull(update.getBefore());
+        assertNull(update.getList());
+    }
+
+    @Test
+    public void tooManyPatchedRowsReload() {
+        FakeStore store = new FakeStore(event("old", 1, 1));
+        EarthquakeListPatcher patcher = patcher(store, store.all());
+        List<Earthquake> feed = new ArrayList<>();
+        for (int i = 0; i <= EarthquakeListPatcher.MAX_PATCHED_ROWS; i++) {
+            feed.add(event("ev" + i, 100 + i, 100 + i));
+        }
+
+        EarthquakeListPatcher.Update update = patcher.apply(feed);
+
+        assertEquals(0, update.getBefore().size());
+        assertEquals(feed.size(), update.getAfter().size());
+        assertNull(update.getList());
+    }
+
+    @Test
+    public void listWithoutEngineReloads() {
+        FakeStore store = new FakeStore(event("old", 1, 1));
+        EarthquakeListPatcher patcher = patcher(store, store.all());
+        patcher.setList(patcher.getList(), null);
+
+        EarthquakeListPatcher.Update update = patcher.apply(Collections.singletonList(event("a", 30, 30)));
+
+        assertEquals(Collections.singletonList("a"), ids(update.getAfter()));
+        assertNull(update.getList());
+    }
+
+    @Test
+    public void unchangedFeedPatchesNothing() {
+        FakeStore store = new FakeStore(event("a", 30, 30), event("old", 1, 1));
+        List<Earthquake> list = store.all();
+        EarthquakeListPatcher patcher = patcher(store, list);
+
+        assertNull(patcher.apply(Collections.singletonList(event("a", 30, 30))));
+        assertSame(list, patcher.getList());
+    }
+
+    @Test
+    public void prefixOnlySeesItsRows() {
+        ArrayList<Earthquake> streamed = new ArrayList<>(Arrays.asList(event("a", 30, 30), event("b", 20, 20)));
+        EarthquakeListPatcher.Prefix prefix = new EarthquakeListPatcher.Prefix(streamed, streamed.size());
+        streamed.add(event("c", 10, 10));
+
+        assertEquals(Arrays.asList("a", "b"), ids(prefix));
+        try {
+            prefix.get(2);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            assertTrue(e.getMessage().contains("size 2"));
+        }
+    }
+
+    @Test
+    public void patchedListMapsBasePositions() {
+        List<Earthquake> base = Arrays.asList(event("c", 30, 30), event("b", 20, 20), event("a", 10, 10));
+        EarthquakeListPatcher.PatchedList patched = EarthquakeListPatcher.PatchedList.of(base, 1,
+                Arrays.asList(event("e", 50, 50), event("d", 40, 40)));
+
+        assertEquals(Arrays.asList("e", "d", "b", "a"), ids(patched));
+        assertEquals(1, patched.getBaseOffset());
+        assertEquals(3, patched.toPosition(2));
+    }
+
+    private static EarthquakeListPatcher patcher(FakeStore store, List<Earthquake> list) {
+        return new EarthquakeListPatcher(store, list, new EarthquakeQueryEngine(list));
+    }
+
+    /**
+     * Assert the patched list and its query engine match the ones built from the store.
+     */
+    private static void assertInStep(FakeStore store, EarthquakeListPatcher.Update update) {
+        List<Earthquake> all = store.all();
+        assertEquals(idsAndUpdates(all), idsAndUpdates(update.getList()));
+        EarthquakeQueryEngine rebuilt = new EarthquakeQueryEngine(all);
+        for (int sortOrder = 0; sortOrder < 2; sortOrder++) {
+            assertEquals(idsAndUpdates(rebuilt.query(EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE, 5,
+                    Long.MAX_VALUE, sortOrder)),
+                    idsAndUpdates(update.getEngine().query(EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE, 5,
+                            Long.MAX_VALUE, sortOrder)));
+        }
+    }
+
+    private static List<String> idsAndUpdates(List<Earthquake> earthquakes) {
+        List<String> result = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            result.add(earthquake.getId() + "@" + earthquake.getUpdated());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeMetricsTest {
+
+    private final EarthquakeMetrics metrics = EarthquakeMetrics.get();
+
+    @Before
+    public void setUp() {
+        metrics.reset();
+    }
+
+    @Test
+    public void timerKeepsCountAverageAndMaximum() {
+        EarthquakeMetrics.Timer timer = metrics.getBind();
+        timer.record(1000000);
+        timer.record(3000000);
+
+        assertEquals(2, timer.getCount());
+        assertEquals(2.0, timer.getAverageMillis(), 1e-9);
+        assertEquals(3000000, timer.getMaxNanos());
+    }
+
+    @Test
+    public void hitRateIsShareOfLookups() {
+        EarthquakeMetrics.HitRate pageCache = metrics.getPageCache();
+        assertEquals(0, pageCache.getRatio(), 0);
+
+        pageCache.hit();
+        pageCache.hit();
+        pageCache.hit();
+        pageCache.miss();
+
+        assertEquals(0.75, pageCache.getRatio(), 1e-9);
+    }
+
+    @Test
+    public void parseRecordsFeatures() {
+        QueryUtils.extractEarthquakes();
+
+        assertEquals(10, metrics.getParsedFeatures());
+        assertEquals(1, metrics.getParse().getCount());
+        assertTrue(metrics.getFeaturesPerSecond() > 0);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        metrics.getLoadLatency().record(5);
+        metrics.getResponseCache().miss();
+        metrics.recordParse(3, 10);
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getLoadLatency().getCount());
+        assertEquals(0, metrics.getResponseCache().getMisses());
+        assertEquals(0, metrics.getParsedFeatures());
+        assertEquals(0, metrics.getParseMicrosPerFeature(), 0);
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Scrolls a paged list over a 100k-row snapshot. Pages load on the calling thread and are
+ * handed back through a queue standing in for the main thread's message queue.
+ */
+public class EarthquakePagedListTest {
+
+    private static final int ROWS = 100000;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static CatalogSnapshot snapshot;
+    private static String[] ids;
+
+    private final ArrayDeque<Runnable> mainQueue = new ArrayDeque<>();
+    private final Executor mainThread = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mainQueue.add(command);
+        }
+    };
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private int[] loads;
+    private EarthquakePagedList.PageSource source;
+
+    @Before
+    public void setUp() throws IOException {
+        if (snapshot == null) {
+            File file = folder.newFile("catalog.snapshot");
+            List<Earthquake> earthquakes = EarthquakeQueryEngineTest.catalog(new Random(11), ROWS, 1454124312220L);
+            CatalogSnapshot.write(file, earthquakes);
+            ids = new String[ROWS];
+            for (int i = 0; i < ROWS; i++) {
+                ids[i] = earthquakes.get(i).getId();
+            }
+            snapshot = CatalogSnapshot.open(file);
+        }
+        loads = new int[ROWS];
+        source = new EarthquakePagedList.PageSource() {
+            @Override
+            public List<Earthquake> loadPage(int offset, int limit) {
+                loads[offset]++;
+                ArrayList<Earthquake> rows = new ArrayList<>(limit);
+                for (int i = offset; i < offset + limit; i++) {
+                    rows.add(snapshot.get(i));
+                }
+                return rows;
+            }
+        };
+    }
+
+    @Test
+    public void scrollsEveryRowWithBoundedHeap() {
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, direct, mainThread);
+        long baseline = Heap.usedAfterGc();
+        long peak = baseline;
+
+        for (int i = 0; i < ROWS; i++) {
+            Earthquake earthquake = list.get(i);
+            if (earthquake == null) {
+                drainMainQueue();
+                earthquake = list.get(i);
+            }
+            assertNotNull("row " + i, earthquake);
+            assertEquals(ids[i], earthquake.getId());
+            assertTrue(list.getLoadedPageCount() <= 40);
+            if (i % 10000 == 0) {
+                peak = Math.max(peak, Heap.usedAfterGc());
+            }
+        }
+
+        assertTrue("heap grew by " + (peak - baseline) + " bytes", peak - baseline < 4 * 1024 * 1024);
+        for (int offset = 0; offset < ROWS; offset += 50) {
+            assertEquals("page at " + offset, 1, loads[offset]);
+        }
+    }
+
+    @Test
+    public void prefetchesNextPageBeforeItIsReached() {
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, direct, mainThread);
+        list.get(0);
+        drainMainQueue();
+
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull("row " + i, list.get(i));
+            drainMainQueue();
+        }
+    }
+
+    @Test
+    public void reloadsEvictedPages() {
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, direct, mainThread);
+        for (int i = 0; i < 100 * 50; i += 50) {
+            list.get(i + 25);
+            drainMainQueue();
+        }
+
+        assertEquals(40, list.getLoadedPageCount());
+        assertNull(list.get(25));
+        drainMainQueue();
+        assertEquals(ids[25], list.get(25).getId());
+        assertEquals(2, loads[0]);
+    }
+
+    @Test
+    public void bindingLoadedRowsDoesNotAllocate() {
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, direct, mainThread);
+        // Far past the pages whose numbers would be cached boxes
+        int first = 500 * 50;
+        for (int i = first; i < first + 30 * 50; i++) {
+            if (list.get(i) == null) {
+                drainMainQueue();
+            }
+        }
+        drainMainQueue();
+        // Warm up, so the measurement doesn't count class loading or compilation
+        bindAll(list, first + 50, first + 29 * 50);
+
+        long before = Heap.allocatedByThread();
+        bindAll(list, first + 50, first + 29 * 50);
+        long allocated = Heap.allocatedByThread() - before;
+
+        assertEquals("bytes allocated", 0, allocated);
+    }
+
+    @Test
+    public void preloadedRowsShowWithoutWaiting() {
+        Executor rejecting = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, rejecting, mainThread);
+
+        list.preload(1234);
+
+        assertEquals(1234, list.getLastPosition());
+        assertEquals(3, list.getLoadedPageCount());
+        for (int i = 1150; i < 1300; i++) {
+            assertEquals(ids[i], list.get(i).getId());
+        }
+        assertTrue(mainQueue.isEmpty());
+        assertEquals(1299, list.getLastPosition());
+    }
+
+    @Test
+    public void preloadClampsToTheList() {
+        EarthquakePagedList list = new EarthquakePagedList(source, 120, direct, mainThread);
+
+        list.preload(5000);
+
+        assertEquals(119, list.getLastPosition());
+        assertEquals(2, list.getLoadedPageCount());
+        assertEquals(1, loads[50]);
+        assertEquals(1, loads[100]);
+    }
+
+    @Test
+    public void reportsLoadedRange() {
+        EarthquakePagedList list = new EarthquakePagedList(source, 120, direct, mainThread);
+        final List<int[]> loaded = new ArrayList<>();
+        list.setOnPageLoadedListener(new EarthquakePagedList.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(int start, int count) {
+                loaded.add(new int[]{start, count});
+            }
+        });
+
+        list.get(110);
+        assertTrue(loaded.isEmpty());
+        drainMainQueue();
+
+        // The last page is short, and the one before it is prefetched
+        assertEquals(2, loaded.size());
+        assertEquals(50, loaded.get(0)[0]);
+        assertEquals(50, loaded.get(0)[1]);
+        assertEquals(100, loaded.get(1)[0]);
+        assertEquals(20, loaded.get(1)[1]);
+    }
+
+    @Test
+    public void requestsEachPageOnceWhileLoading() {
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, direct, mainThread);
+        for (int i = 0; i < 10; i++) {
+            assertNull(list.get(30));
+        }
+        drainMainQueue();
+
+        assertEquals(1, loads[0]);
+        assertNotNull(list.get(30));
+    }
+
+    @Test
+    public void rejectedLoadIsRetriedLater() {
+        final boolean[] shutDown = {true};
+        Executor loader = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (shutDown[0]) {
+                    throw new RejectedExecutionException();
+                }
+                command.run();
+            }
+        };
+        EarthquakePagedList list = new EarthquakePagedList(source, ROWS, loader, mainThread);
+
+        assertNull(list.get(30));
+        shutDown[0] = false;
+        assertNull(list.get(30));
+        drainMainQueue();
+        assertNotNull(list.get(30));
+    }
+
+    private static void bindAll(EarthquakePagedList list, int from, int to) {
+        for (int pass = 0; pass < 20; pass++) {
+            for (int i = from; i < to; i++) {
+                if (list.get(i) == null) {
+                    fail("row " + i);
+                }
+            }
+        }
+    }
+
+    private void drainMainQueue() {
+        Runnable command;
+        while ((command = mainQueue.poll()) != null) {
+            command.run();
+        }
+    }
+}
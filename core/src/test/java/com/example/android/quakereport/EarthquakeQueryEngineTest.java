@@ -0,0 +1,95 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthquakeQueryEngineTest {
+
+    @Test
+    public void queryMatchesScan() {
+        Random random = new Random(3);
+        List<Earthquake> earthquakes = catalog(random, 2000, 1000000);
+        EarthquakeQueryEngine engine = new EarthquakeQueryEngine(earthquakes);
+
+        for (int i = 0; i < 50; i++) {
+            double minMagnitude = 2 + random.nextInt(30) / 10.0;
+            long toTime = 1000000 - random.nextInt(3000);
+            long fromTime = toTime - random.nextInt(3000);
+            for (int sortOrder = 0; sortOrder < 2; sortOrder++) {
+                assertEquals(scan(earthquakes, minMagnitude, fromTime, toTime, sortOrder),
+                        new ArrayList<>(engine.query(minMagnitude, fromTime, toTime, sortOrder)));
+            }
+        }
+    }
+
+    @Test
+    public void patchMatchesRebuild() {
+        Random random = new Random(1);
+        for (int iteration = 0; iteration < 300; iteration++) {
+            List<Earthquake> old = catalog(random, random.nextInt(500), 1000000);
+            int removed = old.isEmpty() ? 0 : random.nextInt(Math.min(old.size(), 50) + 1);
+            List<Earthquake> head = catalog(random, random.nextInt(60), 1000200);
+            List<Earthquake> all = new ArrayList<>(head);
+            all.addAll(old.subList(removed, old.size()));
+
+            EarthquakeQueryEngine patched = new EarthquakeQueryEngine(old).patch(all, removed, head);
+            EarthquakeQueryEngine rebuilt = new EarthquakeQueryEngine(all);
+
+            for (int sortOrder = 0; sortOrder < 2; sortOrder++) {
+                double minMagnitude = random.nextBoolean() ? EarthquakeQueryEngine.NO_MINIMUM_MAGNITUDE : 3.5;
+                long fromTime = random.nextBoolean() ? Long.MIN_VALUE : 999900;
+                assertEquals("iteration " + iteration + ", sort " + sortOrder,
+                        new ArrayList<>(rebuilt.query(minMagnitude, fromTime, Long.MAX_VALUE, sortOrder)),
+                        new ArrayList<>(patched.query(minMagnitude, fromTime, Long.MAX_VALUE, sortOrder)));
+            }
+        }
+    }
+
+    /**
+     * Return count events, newest first, with many ties in time and magnitude.
+     */
+    static List<Earthquake> catalog(Random random, int count, long newestTime) {
+        List<Earthquake> earthquakes = new ArrayList<>(count);
+        long time = newestTime;
+        for (int i = 0; i < count; i++) {
+            time -= random.nextInt(3);
+            double magnitude = Math.round(random.nextDouble() * 30) / 10.0 + 2;
+            earthquakes.add(new Earthquake("id" + random.nextInt(), magnitude, "Somewhere", time, time, 0,
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, 10, ""));
+        }
+        return earthquakes;
+    }
+
+    /**
+     * The query done the slow way: filter, then a stable sort of the list order.
+     */
+    private static List<Earthquake> scan(List<Earthquake> earthquakes, double minMagnitude,
+                                         long fromTime, long toTime, final int sortOrder) {
+        List<Earthquake> result = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getMagnitude() >= minMagnitude
+                    && earthquake.getTimeInMillis() >= fromTime && earthquake.getTimeInMillis() <= toTime) {
+                result.add(earthquake);
+            }
+        }
+        Collections.sort(result, new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                int byTime = Long.compare(b.getTimeInMillis(), a.getTimeInMillis());
+                if (sortOrder == EarthquakeQueryEngine.SORT_BY_TIME) {
+                    return byTime;
+                }
+                int byMagnitude = Double.compare(b.getMagnitude(), a.getMagnitude());
+                return byMagnitude != 0 ? byMagnitude : byTime;
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the grid queries against a brute-force scan of every event.
+ */
+public class EarthquakeSpatialIndexTest {
+
+    private List<Earthquake> earthquakes;
+    private EarthquakeSpatialIndex index;
+
+    @Before
+    public void setUp() {
+        earthquakes = catalog(new Random(9), 20000);
+        // Points on the edges the grid has to get right
+        earthquakes.add(earthquake(90, 0));
+        earthquakes.add(earthquake(-90, 45));
+        earthquakes.add(earthquake(89.9, -179.9));
+        earthquakes.add(earthquake(0, 180));
+        earthquakes.add(earthquake(0, -180));
+        earthquakes.add(earthquake(10, 179.99));
+        earthquakes.add(earthquake(10, -179.99));
+        index = new EarthquakeSpatialIndex();
+        index.addAll(earthquakes);
+    }
+
+    @Test
+    public void radiusMatchesScan() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            double radiusKm = random.nextDouble() * 3000;
+            assertRadius(latitude, longitude, radiusKm);
+        }
+    }
+
+    @Test
+    public void radiusAcrossAntimeridian() {
+        assertRadius(10, 179.5, 500);
+        assertRadius(10, -179.5, 500);
+        assertRadius(-40, 180, 2000);
+    }
+
+    @Test
+    public void radiusAroundPoles() {
+        assertRadius(89, 0, 300);
+        assertRadius(90, 0, 50);
+        assertRadius(-89.5, 120, 1000);
+        assertRadius(60, 30, 4000);
+    }
+
+    @Test
+    public void radiusCoveringTheGlobe() {
+        int[] positions = index.queryRadius(0, 0, 30000);
+
+        assertEquals(earthquakes.size(), positions.length);
+    }
+
+    @Test
+    public void boxMatchesScan() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            double south = random.nextDouble() * 180 - 90;
+            double north = Math.min(90, south + random.nextDouble() * 60);
+            double west = random.nextDouble() * 360 - 180;
+            double east = west + random.nextDouble() * 90;
+            if (east > 180) {
+                east -= 360;
+            }
+            assertBox(south, west, north, east);
+        }
+    }
+
+    @Test
+    public void boxAcrossAntimeridian() {
+        assertBox(-20, 170, 20, -170);
+        assertBox(0, 179.99, 15, -179.99);
+        assertBox(-90, 180, 90, -180);
+    }
+
+    @Test
+    public void boxAtPoles() {
+        assertBox(80, -180, 90, 180);
+        assertBox(-90, -180, -85, 180);
+    }
+
+    @Test
+    public void selectKeepsListOrder() {
+        int[] positions = index.queryBox(-20, 170, 20, -170);
+        List<Earthquake> selected = EarthquakeSpatialIndex.select(earthquakes, positions);
+
+        assertEquals(positions.length, selected.size());
+        for (int i = 0; i < positions.length; i++) {
+            assertSame(earthquakes.get(positions[i]), selected.get(i));
+        }
+    }
+
+    @Test
+    public void selectDropsPositionsPastTheEnd() {
+        List<Earthquake> shorter = earthquakes.subList(0, 100);
+        int[] positions = index.queryBox(-90, -180, 90, 180);
+
+        assertEquals(100, EarthquakeSpatialIndex.select(shorter, positions).size());
+    }
+
+    @Test
+    public void distanceOfKnownPoints() {
+        // Quarter of a great circle
+        assertEquals(Math.PI / 2 * EarthquakeSpatialIndex.EARTH_RADIUS_KM,
+                EarthquakeSpatialIndex.distanceKm(0, 0, 90, 0), 1e-6);
+        assertEquals(EarthquakeSpatialIndex.distanceKm(10, 179.9, 10, -179.9),
+                EarthquakeSpatialIndex.distanceKm(10, 0.1, 10, -0.1), 1e-6);
+    }
+
+    private void assertRadius(double latitude, double longitude, double radiusKm) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (EarthquakeSpatialIndex.distanceKm(latitude, longitude,
+                    earthquake.getLatitude(), earthquake.getLongitude()) <= radiusKm) {
+                expected.add(i);
+            }
+        }
+        assertArrayEquals(latitude + "," + longitude + " r" + radiusKm,
+                toArray(expected), index.queryRadius(latitude, longitude, radiusKm));
+    }
+
+    private void assertBox(double south, double west, double north, double east) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            double latitude = earthquakes.get(i).getLatitude();
+            double longitude = earthquakes.get(i).getLongitude();
+            boolean inLongitude = west <= east
+                    ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (latitude >= south && latitude <= north && inLongitude) {
+                expected.add(i);
+            }
+        }
+        assertArrayEquals(Arrays.asList(south, west, north, east).toString(),
+                toArray(expected), index.queryBox(south, west, north, east));
+    }
+
+    private static int[] toArray(List<Integer> positions) {
+        int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Return count events spread evenly over the globe.
+     */
+    static List<Earthquake> catalog(Random random, int count) {
+        List<Earthquake> earthquakes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double latitude = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+            double longitude = random.nextDouble() * 360 - 180;
+            earthquakes.add(new Earthquake("ev" + i, 3, "Somewhere", 0, 0, 0, latitude, longitude, 10, ""));
+        }
+        return earthquakes;
+    }
+
+    static Earthquake earthquake(double latitude, double longitude) {
+        return new Earthquake("edge" + latitude + "," + longitude, 3, "Edge", 0, 0, 0,
+                latitude, longitude, 10, "");
+    }
+}
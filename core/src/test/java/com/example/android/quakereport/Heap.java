@@ -0,0 +1,35 @@
+package com.example.android.quakereport;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap measurements for the tests that check what is retained while streaming a large catalog,
+ * and what is allocated on paths that should allocate nothing.
+ */
+final class Heap {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Heap() {
+    }
+
+    /**
+     * Return the bytes in use once garbage has been collected, i.e. roughly what is retained.
+     */
+    static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Return the bytes allocated by the calling thread so far. Needs a HotSpot JVM. Doesn't
+     * allocate itself, but looking up the bean does, so that is done once.
+     */
+    static long allocatedByThread() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.android.quakereport;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parsesSampleResponse() {
+        List<Earthquake> earthquakes = QueryUtils.extractEarthquakes();
+
+        assertEquals(10, earthquakes.size());
+        Earthquake first = earthquakes.get(0);
+        assertEquals("us20004vvx", first.getId());
+        assertEquals(7.2, first.getMagnitude(), 0);
+        assertEquals("88km N of Yelizovo, Russia", first.getPlace());
+        assertEquals(1454124312220L, first.getTimeInMillis());
+        assertEquals(1460674294040L, first.getUpdated());
+        assertEquals(720, first.getTz());
+        assertEquals(53.9776, first.getLatitude(), 0);
+        assertEquals(158.5463, first.getLongitude(), 0);
+        assertEquals(177, first.getDepth(), 0);
+        assertEquals("http://earthquake.usgs.gov/earthquakes/eventpage/us20004vvx", first.getUrl());
+    }
+
+    @Test
+    public void parsesEveryFeatureInOrder() throws IOException {
+        List<Earthquake> expected = SyntheticGeoJson.earthquakes(500, 7);
+        List<Earthquake> parsed = parse(new ByteArrayInputStream(SyntheticGeoJson.generate(500, 7)));
+
+        assertEquals(expected.size(), parsed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Earthquake want = expected.get(i);
+            Earthquake got = parsed.get(i);
+            assertEquals(want.getId(), got.getId());
+            assertEquals(want.getMagnitude(), got.getMagnitude(), 0);
+            assertEquals(want.getPlace(), got.getPlace());
+            assertEquals(want.getTimeInMillis(), got.getTimeInMillis());
+            assertEquals(want.getUpdated(), got.getUpdated());
+            assertEquals(want.getLatitude(), got.getLatitude(), 0);
+            assertEquals(want.getLongitude(), got.getLongitude(), 0);
+            assertEquals(want.getDepth(), got.getDepth(), 0);
+            assertEquals(want.getUrl(), got.getUrl());
+        }
+    }
+
+    @Test
+    public void skipsEventsThatAreNotEarthquakes() throws IOException {
+        String json = "{\"type\":\"FeatureCollection\",\"features\":["
+                + feature("quake", "earthquake") + ","
+                + feature("blast", "quarry blast") + ","
+                + feature("untyped", null) + ","
+                + feature("explosion", "explosion") + "]}";
+
+        List<Earthquake> earthquakes = parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        assertEquals(2, earthquakes.size());
+        assertEquals("quake", earthquakes.get(0).getId());
+        assertEquals("untyped", earthquakes.get(1).getId());
+    }
+
+    @Test
+    public void badNumbersFailAsMalformedJson() throws IOException {
+        assertMalformed(feature("quake", "earthquake").replace("\"mag\":2.6", "\"mag\":\"n/a\""));
+        assertMalformed(feature("quake", "earthquake").replace("\"time\":1", "\"time\":\"soon\""));
+        assertMalformed(feature("quake", "earthquake").replace("\"url\"", "\"tz\":720.5,\"url\""));
+    }
+
+    @Test
+    public void peakHeapStaysFlatWhileParsing() throws IOException {
+        // Far bigger than the allowed growth, a parser building a tree would blow through it
+        File file = folder.newFile("earthquakes.geojson");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            SyntheticGeoJson.write(out, 100000, 100000);
+        } finally {
+            out.close();
+        }
+        long allowedGrowth = 8 * 1024 * 1024;
+        assertTrue(file.length() > 4 * allowedGrowth);
+
+        final long baseline = Heap.usedAfterGc();
+        final long[] peak = {baseline};
+        final int[] count = new int[1];
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        QueryUtils.parseEarthquakes(in, new QueryUtils.OnEarthquakeParsedListener() {
+            @Override
+            public void onEarthquakeParsed(Earthquake earthquake) {
+                if (++count[0] % 10000 == 0) {
+                    peak[0] = Math.max(peak[0], Heap.usedAfterGc());
+                }
+            }
+        });
+
+        assertEquals(100000, count[0]);
+        assertTrue("heap grew by " + (peak[0] - baseline) + " bytes", peak[0] - baseline < allowedGrowth);
+    }
+
+    private static void assertMalformed(String feature) throws IOException {
+        String json = "{\"type\":\"FeatureCollection\",\"features\":[" + feature + "]}";
+        try {
+            parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+            fail(feature);
+        } catch (MalformedJsonException e) {
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    private static String feature(String id, String type) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":2.6,\"place\":\"Somewhere\",\"time\":1,"
+                + "\"updated\":1,\"url\":\"\"" + (type == null ? "" : ",\"type\":\"" + type + "\"") + "},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2,3]},\"id\":\"" + id + "\"}";
+    }
+
+    static List<Earthquake> parse(InputStream in) throws IOException {
+        final ArrayList<Earthquake> earthquakes = new ArrayList<>();
+        QueryUtils.parseEarthquakes(in, new QueryUtils.OnEarthquakeParsedListener() {
+            @Override
+            public void onEarthquakeParsed(Earthquake earthquake) {
+                earthquakes.add(earthquake);
+            }
+        });
+        return earthquakes;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResponseDiskCacheTest {
+
+    private static final String FIRST = "https://example.com/first.geojson";
+    private static final String SECOND = "https://example.com/second.geojson";
+    private static final String THIRD = "https://example.com/third.geojson";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private ResponseDiskCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("cache");
+        cache = new ResponseDiskCache(directory, 100);
+    }
+
+    @Test
+    public void storesBodyAndValidators() throws IOException {
+        put(FIRST, 40);
+
+        ResponseDiskCache.Entry entry = cache.get(FIRST);
+        assertNotNull(entry);
+        assertEquals("\"" + FIRST + "\"", entry.getEtag());
+        assertEquals("Sat, 30 Jan 2016 03:25:12 GMT", entry.getLastModified());
+        assertArrayEquals(body(40), read(entry));
+    }
+
+    @Test
+    public void commitPastMaxSizeEvictsOldestEntry() throws IOException {
+        put(FIRST, 60);
+        age();
+
+        put(SECOND, 60);
+
+        assertNull(cache.get(FIRST));
+        assertNotNull(cache.get(SECOND));
+        // The body and the validators of the second entry
+        assertEquals(2, directory.list().length);
+    }
+
+    @Test
+    public void accessKeepsEntry() throws IOException {
+        put(FIRST, 40);
+        put(SECOND, 40);
+        age();
+        assertNotNull(cache.get(FIRST));
+
+        put(THIRD, 40);
+
+        assertNotNull(cache.get(FIRST));
+        assertNull(cache.get(SECOND));
+        assertNotNull(cache.get(THIRD));
+    }
+
+    @Test
+    public void abortedEditLeavesNothing() throws IOException {
+        ResponseDiskCache.Editor editor = cache.edit(FIRST);
+        editor.getOutputStream().write(body(40));
+
+        editor.abort();
+
+        assertNull(cache.get(FIRST));
+        assertEquals(0, directory.list().length);
+    }
+
+    private void put(String url, int size) throws IOException {
+        ResponseDiskCache.Editor editor = cache.edit(url);
+        editor.getOutputStream().write(body(size));
+        editor.commit("\"" + url + "\"", "Sat, 30 Jan 2016 03:25:12 GMT", false);
+    }
+
+    /**
+     * Make every entry so far look used a minute ago, so later ones are clearly more recent.
+     */
+    private void age() {
+        long minuteAgo = System.currentTimeMillis() - 60 * 1000;
+        for (File file : directory.listFiles()) {
+            file.setLastModified(minuteAgo);
+        }
+    }
+
+    private static byte[] body(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] read(ResponseDiskCache.Entry entry) throws IOException {
+        InputStream in = entry.openBody();
+        try {
+            byte[] bytes = new byte[1024];
+            int length = 0;
+            int read;
+            while ((read = in.read(bytes, length, bytes.length - length)) > 0) {
+                length += read;
+            }
+            return Arrays.copyOf(bytes, length);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates USGS-shaped GeoJSON of any size, including the properties the parser skips, so the
+ * tests and benchmarks don't depend on the network or on checked-in fixtures. The same seed
+ * always gives the same catalog, newest event first like the USGS query.
+ */
+public final class SyntheticGeoJson {
+
+    /** End of the catalog, events go back from here a few minutes apart */
+    private static final long NEWEST_TIME = 1600000000000L;
+
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW", "NNE", "ESE"};
+    private static final String[] PLACES = {
+            "Ridgecrest, CA", "Anchorage, Alaska", "Hilo, Hawaii", "Tokyo, Japan", "Lima, Peru",
+            "Santiago, Chile", "Suva, Fiji", "Kermadec Islands, New Zealand", "Crete, Greece",
+            "Banda Sea", "Mid-Atlantic Ridge", "South of the Fiji Islands"
+    };
+
+    private SyntheticGeoJson() {
+    }
+
+    /**
+     * Return the generated earthquakes as objects, the same ones the document describes.
+     */
+    public static ArrayList<Earthquake> earthquakes(int count, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Earthquake> earthquakes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            earthquakes.add(next(random, i));
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Return a document with the given number of features, UTF-8 encoded.
+     */
+    public static byte[] generate(int count, long seed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 600 + 1024);
+        try {
+            write(out, count, seed);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write a document with the given number of features, UTF-8 encoded.
+     */
+    public static void write(OutputStream out, int count, long seed) throws IOException {
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        Random random = new Random(seed);
+        writer.write("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":" + NEWEST_TIME
+                + ",\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query\",\"title\":\"USGS Earthquakes\""
+                + ",\"status\":200,\"api\":\"1.5.8\",\"count\":" + count + "},\"features\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeFeature(writer, next(random, i));
+        }
+        writer.write("],\"bbox\":[-179.9,-60.0,0.0,179.9,80.0,600.0]}");
+        writer.flush();
+    }
+
+    private static Earthquake next(Random random, int index) {
+        // Gutenberg-Richter like: small events are far more common than large ones
+        double magnitude = Math.round((2.5 - Math.log10(1 - random.nextDouble() * 0.999999)) * 10) / 10.0;
+        String region = PLACES[random.nextInt(PLACES.length)];
+        String place = random.nextInt(10) < 7
+                ? (1 + random.nextInt(150)) + "km " + DIRECTIONS[random.nextInt(DIRECTIONS.length)] + " of " + region
+                : region;
+        long time = NEWEST_TIME - index * 300000L - random.nextInt(300000);
+        long updated = time + random.nextInt(86400000);
+        double latitude = Math.round((random.nextDouble() * 140 - 70) * 10000) / 10000.0;
+        double longitude = Math.round((random.nextDouble() * 360 - 180) * 10000) / 10000.0;
+        double depth = Math.round(random.nextDouble() * 600 * 100) / 100.0;
+        String id = "sy" + (10000000 + index);
+        return new Earthquake(id, magnitude, place, time, updated, 0, latitude, longitude, depth,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/" + id);
+    }
+
+    private static void writeFeature(Writer writer, Earthquake earthquake) throws IOException {
+        String id = earthquake.getId();
+        writer.write("{\"type\":\"Feature\",\"properties\":{\"mag\":");
+        writer.write(Double.toString(earthquake.getMagnitude()));
+        writer.write(",\"place\":\"");
+        writer.write(earthquake.getPlace());
+        writer.write("\",\"time\":");
+        writer.write(Long.toString(earthquake.getTimeInMillis()));
+        writer.write(",\"updated\":");
+        writer.write(Long.toString(earthquake.getUpdated()));
+        writer.write(",\"tz\":null,\"url\":\"");
+        writer.write(earthquake.getUrl());
+        writer.write("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=");
+        writer.write(id);
+        writer.write("&format=geojson\",\"felt\":null,\"cdi\":null,\"mmi\":null,\"alert\":null,"
+                + "\"status\":\"reviewed\",\"tsunami\":0,\"sig\":");
+        writer.write(Integer.toString((int) (earthquake.getMagnitude() * 100)));
+        writer.write(",\"net\":\"sy\",\"code\":\"");
+        writer.write(id.substring(2));
+        writer.write("\",\"ids\":\",");
+        writer.write(id);
+        writer.write(",\",\"sources\":\",sy,\",\"types\":\",origin,phase-data,\",\"nst\":null,"
+                + "\"dmin\":1.2,\"rms\":0.8,\"gap\":40,\"magType\":\"mb\",\"type\":\"earthquake\",\"title\":\"M ");
+        writer.write(Double.toString(earthquake.getMagnitude()));
+        writer.write(" - ");
+        writer.write(earthquake.getPlace());
+        writer.write("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+        writer.write(Double.toString(earthquake.getLongitude()));
+        writer.write(',');
+        writer.write(Double.toString(earthquake.getLatitude()));
+        writer.write(',');
+        writer.write(Double.toString(earthquake.getDepth()));
+        writer.write("]},\"id\":\"");
+        writer.write(id);
+        writer.write("\"}");
+    }
+
+    /**
+     * Write documents of the given sizes to a directory: SyntheticGeoJson directory size...
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args[0]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        for (int i = 1; i < args.length; i++) {
+            int count = Integer.parseInt(args[i]);
+            File file = new File(directory, String.format(Locale.US, "earthquakes-%d.geojson", count));
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                write(out, count, count);
+            } finally {
+                out.close();
+            }
+            System.out.println(file + ": " + file.length() + " bytes");
+        }
+    }
+}